@@ -0,0 +1,72 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+/**
+ * Determine les tests release d'un perimetre impactes par la modification de fichiers.
+ *
+ * <p> Un test release modifie est impacte. Un autre fichier (par exemple un jeu de donnees <code>.tokio</code>)
+ * impacte les tests release du perimetre qui le referencent par son nom : valeur d'attribut ou texte egal au nom, ou
+ * dont le nom est le dernier element du chemin (<code>file="data/A.tokio"</code>). Un nom qui n'en est qu'une partie
+ * (<code>StoryA.tokio</code> pour <code>A.tokio</code>) n'est pas une reference. </p>
+ */
+class AffectedStoryResolver {
+    private final StoryFinder storyFinder;
+
+
+    AffectedStoryResolver(StoryFinder storyFinder) {
+        this.storyFinder = storyFinder;
+    }
+
+
+    public List<File> resolve(File scope, Collection<File> changedFiles) throws IOException {
+        List<File> stories = storyFinder.findStories(scope);
+        Set<File> affected = new LinkedHashSet<File>();
+        for (File changedFile : changedFiles) {
+            if (stories.contains(changedFile)) {
+                affected.add(changedFile);
+                continue;
+            }
+            Pattern reference = toReferencePattern(changedFile.getName());
+            for (File story : stories) {
+                if (reference.matcher(readContent(story)).find()) {
+                    affected.add(story);
+                }
+            }
+        }
+        return new ArrayList<File>(affected);
+    }
+
+
+    static Pattern toReferencePattern(String fileName) {
+        return Pattern.compile("(?<=[\"'>/\\\\\\s])" + Pattern.quote(fileName) + "(?=[\"'<\\s])");
+    }
+
+
+    private static String readContent(File file) throws IOException {
+        StringBuilder content = new StringBuilder();
+        Reader reader = new FileReader(file);
+        try {
+            char[] buffer = new char[4096];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                content.append(buffer, 0, read);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return content.toString();
+    }
+}
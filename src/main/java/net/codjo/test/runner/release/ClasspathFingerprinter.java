@@ -0,0 +1,152 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * Calcule l'empreinte de chaque element d'un classpath.
+ *
+ * <p> L'empreinte d'un jar est le MD5 de son contenu. Celle d'un repertoire de compilation est le MD5 de la liste
+ * de ses fichiers (chemin relatif, taille et date de modification) : il n'est pas necessaire de relire chaque
+ * classe pour savoir si le repertoire a change. Un element absent a pour empreinte {@link #MISSING}. </p>
+ *
+ * <p> Le MD5 d'un jar est memorise dans le {@link StoryFingerprintStore} avec sa taille et sa date de modification :
+ * il n'est recalcule que si le jar a change. Les jars du JDK ne changent qu'avec sa mise a jour, leur empreinte se
+ * limite a leur taille et leur date de modification. </p>
+ */
+class ClasspathFingerprinter {
+    static final String MISSING = "missing";
+    private final StoryFingerprintStore digestCache;
+    private final String sdkHome;
+
+
+    ClasspathFingerprinter() {
+        this(null, null);
+    }
+
+
+    /**
+     * @param digestCache cache des MD5 des jars, ou <code>null</code>.
+     * @param sdkHome     repertoire du JDK du runner, ou <code>null</code>.
+     */
+    ClasspathFingerprinter(StoryFingerprintStore digestCache, File sdkHome) {
+        this.digestCache = digestCache;
+        this.sdkHome = (sdkHome == null ? null : sdkHome.getAbsolutePath() + File.separator);
+    }
+
+
+    public Map<String, String> fingerprint(List<String> classpath) throws IOException {
+        Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+        for (String entry : classpath) {
+            fingerprints.put(entry, fingerprint(new File(entry)));
+        }
+        return fingerprints;
+    }
+
+
+    /**
+     * @return les elements du classpath ajoutes, supprimes ou modifies entre deux empreintes.
+     */
+    public static List<String> changedEntries(Map<String, String> previous, Map<String, String> current) {
+        List<String> changed = new ArrayList<String>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String entry : previous.keySet()) {
+            if (!current.containsKey(entry)) {
+                changed.add(entry);
+            }
+        }
+        return changed;
+    }
+
+
+    String fingerprint(File entry) throws IOException {
+        if (entry.isDirectory()) {
+            MessageDigest digest = newDigest();
+            digestDirectory(digest, entry, "");
+            return toHex(digest.digest());
+        }
+        if (entry.isFile()) {
+            if (sdkHome != null && entry.getAbsolutePath().startsWith(sdkHome)) {
+                return "sdk:" + entry.length() + ':' + entry.lastModified();
+            }
+            String digest = (digestCache == null ? null : digestCache.getJarDigest(entry));
+            if (digest == null) {
+                digest = digestContent(entry);
+                if (digestCache != null) {
+                    digestCache.putJarDigest(entry, digest);
+                }
+            }
+            return digest;
+        }
+        return MISSING;
+    }
+
+
+    private static void digestDirectory(MessageDigest digest, File directory, String relativePath) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String path = relativePath + "/" + file.getName();
+            if (file.isDirectory()) {
+                digestDirectory(digest, file, path);
+            }
+            else {
+                digest.update((path + ':' + file.length() + ':' + file.lastModified() + '\n').getBytes());
+            }
+        }
+    }
+
+
+    private static String digestContent(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[65536];
+            for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally {
+            inputStream.close();
+        }
+        return toHex(digest.digest());
+    }
+
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 non supporte", e);
+        }
+    }
+
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            hex.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * Selectionne les tests release dont le classpath a change depuis leur dernier passage au vert.
+ */
+class ClasspathImpactAnalyzer {
+    private final StoryFingerprintStore store;
+
+
+    ClasspathImpactAnalyzer(StoryFingerprintStore store) {
+        this.store = store;
+    }
+
+
+    /**
+     * @return pour chaque test release a relancer, les elements du classpath ayant declenche la relance (liste
+     *         vide si le test release n'est jamais passe au vert).
+     */
+    public Map<File, List<String>> selectChangedSinceLastGreen(List<File> stories, Map<String, String> fingerprints) {
+        Map<File, List<String>> selection = new LinkedHashMap<File, List<String>>();
+        for (File story : stories) {
+            Map<String, String> lastGreen = store.getLastGreen(story.getAbsolutePath());
+            if (lastGreen == null) {
+                selection.put(story, Collections.<String>emptyList());
+                continue;
+            }
+            List<String> changedEntries = ClasspathFingerprinter.changedEntries(lastGreen, fingerprints);
+            if (!changedEntries.isEmpty()) {
+                selection.put(story, changedEntries);
+            }
+        }
+        return selection;
+    }
+
+
+    public static String toReport(Map<File, List<String>> selection, int storyCount) {
+        StringBuilder report = new StringBuilder("Changed since last green: ")
+              .append(selection.size()).append(" of ").append(storyCount).append(" stories selected\n");
+        for (Map.Entry<File, List<String>> entry : selection.entrySet()) {
+            report.append("  ").append(entry.getKey().getName());
+            if (entry.getValue().isEmpty()) {
+                report.append(": never passed\n");
+                continue;
+            }
+            report.append(":\n");
+            for (String classpathEntry : entry.getValue()) {
+                report.append("    ").append(classpathEntry).append('\n');
+            }
+        }
+        return report.toString();
+    }
+}
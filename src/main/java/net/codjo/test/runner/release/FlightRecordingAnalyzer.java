@@ -0,0 +1,367 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+/**
+ * Resume un enregistrement Flight Recorder : methodes les plus consommatrices de CPU, points chauds d'allocation,
+ * contention sur les moniteurs et pauses du GC.
+ *
+ * <p> L'enregistrement est lu via l'outil <code>jfr print</code> du JDK, ce qui evite de dependre de l'API
+ * <code>jdk.jfr.consumer</code> dans le plugin. </p>
+ *
+ * <p> Les echantillons CPU ne sont attribues aux etapes d'un test release (<code>tokio-*</code>, <code>client</code>,
+ * <code>listen-jms</code>) que si l'enregistrement contient des evenements {@link #STEP_EVENT} : un echantillon
+ * compte pour l'etape dont l'evenement couvre son instant, sur le meme thread. Sans ces evenements, la repartition
+ * par etape n'est pas rapportee plutot que devinee d'apres les noms de classes. </p>
+ *
+ * <p> Les allocations sont lues dans les echantillons <code>jdk.ObjectAllocationSample</code> (JDK 16+), sinon dans
+ * les evenements <code>jdk.ObjectAllocationInNewTLAB</code> et <code>jdk.ObjectAllocationOutsideTLAB</code> (JDK 11 a
+ * 15). </p>
+ */
+class FlightRecordingAnalyzer {
+    /**
+     * Evenement Flight Recorder d'une etape (champ <code>name</code>, plus le thread, le debut et la duree).
+     */
+    static final String STEP_EVENT = "ReleaseTestStep";
+    static final String EVENTS = "jdk.ExecutionSample,jdk.ObjectAllocationSample,jdk.ObjectAllocationInNewTLAB,"
+                                 + "jdk.ObjectAllocationOutsideTLAB,jdk.JavaMonitorEnter,jdk.GarbageCollection,"
+                                 + STEP_EVENT;
+    static final int TOP_SIZE = 10;
+    private static final String OTHER_STEP = "other";
+    private static final Pattern EVENT_START = Pattern.compile("^([\\w.]+) \\{$");
+    private static final Pattern FIELD = Pattern.compile("^  (\\w+) = (.*)$");
+    private static final Pattern FRAME = Pattern.compile("^\\s{4}(\\S.*?)(?: line: \\d+)?$");
+    private static final Pattern QUANTITY = Pattern.compile("^([\\d.,]+) (\\w+)");
+    private static final Pattern TIME = Pattern.compile("(\\d{1,2}):(\\d{2}):(\\d{2})(?:\\.(\\d{1,3}))?");
+    private final Map<String, Long> cpuSamples = new HashMap<String, Long>();
+    private final List<Sample> samples = new ArrayList<Sample>();
+    private final List<Step> steps = new ArrayList<Step>();
+    private final Map<String, Long> allocatedBytes = new HashMap<String, Long>();
+    private final Map<String, Long> tlabAllocatedBytes = new HashMap<String, Long>();
+    private final Map<String, Long> contentionNanos = new HashMap<String, Long>();
+    private long sampleCount;
+    private long gcPauseCount;
+    private long gcPauseTotalNanos;
+    private long gcPauseMaxNanos;
+
+
+    FlightRecordingAnalyzer() {
+    }
+
+
+    /**
+     * Analyse un enregistrement avec l'outil <code>jfr</code> du JDK.
+     */
+    public void analyze(File jfrTool, File recording) throws IOException {
+        Process process = new ProcessBuilder(jfrTool.getPath(), "print", "--events", EVENTS, recording.getPath())
+              .redirectErrorStream(true)
+              .start();
+        Reader reader = new InputStreamReader(process.getInputStream());
+        try {
+            parse(reader);
+        }
+        finally {
+            reader.close();
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException(jfrTool + " a echoue sur " + recording);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Analyse de " + recording + " interrompue");
+        }
+    }
+
+
+    void parse(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String eventType = null;
+        Map<String, String> fields = new HashMap<String, String>();
+        List<String> frames = new ArrayList<String>();
+        boolean inStackTrace = false;
+
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            if (eventType == null) {
+                Matcher start = EVENT_START.matcher(line);
+                if (start.matches()) {
+                    eventType = start.group(1);
+                    fields.clear();
+                    frames.clear();
+                }
+                continue;
+            }
+            if (inStackTrace) {
+                Matcher frame = FRAME.matcher(line);
+                if (line.startsWith("  ]")) {
+                    inStackTrace = false;
+                }
+                else if (frame.matches() && !"...".equals(frame.group(1))) {
+                    frames.add(frame.group(1));
+                }
+                continue;
+            }
+            if ("}".equals(line)) {
+                addEvent(eventType, fields, frames);
+                eventType = null;
+                continue;
+            }
+            Matcher field = FIELD.matcher(line);
+            if (field.matches()) {
+                fields.put(field.group(1), field.group(2));
+                inStackTrace = "stackTrace".equals(field.group(1)) && field.group(2).startsWith("[");
+            }
+        }
+    }
+
+
+    public String toReport(String story) {
+        StringBuilder report = new StringBuilder("\nProfile of ").append(story).append('\n');
+
+        report.append("Top CPU methods (").append(sampleCount).append(" samples):\n");
+        for (Map.Entry<String, Long> entry : top(cpuSamples)) {
+            report.append(format("  %5.1f%%  %s\n", percent(entry.getValue()), entry.getKey()));
+        }
+
+        report.append("Allocation hot spots:\n");
+        for (Map.Entry<String, Long> entry : top(allocatedBytes.isEmpty() ? tlabAllocatedBytes : allocatedBytes)) {
+            report.append(format("  %9.1f MB  %s\n", entry.getValue() / (1024.0 * 1024.0), entry.getKey()));
+        }
+
+        report.append("Lock contention:\n");
+        for (Map.Entry<String, Long> entry : top(contentionNanos)) {
+            report.append(format("  %9d ms  %s\n", entry.getValue() / 1000000, entry.getKey()));
+        }
+
+        report.append(format("GC pauses: %d, total %d ms, max %d ms\n",
+                                    gcPauseCount, gcPauseTotalNanos / 1000000, gcPauseMaxNanos / 1000000));
+
+        if (sampleCount > 0 && steps.isEmpty()) {
+            report.append("CPU by step: not available, the recording has no ").append(STEP_EVENT)
+                  .append(" events\n");
+        }
+        else if (sampleCount > 0) {
+            report.append("CPU by step:\n");
+            Map<String, Long> stepSamples = countStepSamples();
+            for (Map.Entry<String, Long> entry : stepSamples.entrySet()) {
+                report.append(format("  %-12s %5.1f%%\n", entry.getKey(), percent(entry.getValue())));
+            }
+        }
+        return report.toString();
+    }
+
+
+    private static String format(String pattern, Object... arguments) {
+        return String.format(Locale.ENGLISH, pattern, arguments);
+    }
+
+
+    private void addEvent(String eventType, Map<String, String> fields, List<String> frames) {
+        String topFrame = (frames.isEmpty() ? "<unknown>" : frames.get(0));
+        if ("jdk.ExecutionSample".equals(eventType)) {
+            sampleCount++;
+            add(cpuSamples, topFrame, 1);
+            samples.add(new Sample(fields.get("sampledThread"), toMillisOfDay(fields.get("startTime"))));
+        }
+        else if (eventType.equals(STEP_EVENT) || eventType.endsWith("." + STEP_EVENT)) {
+            long start = toMillisOfDay(fields.get("startTime"));
+            if (start >= 0 && fields.containsKey("name")) {
+                steps.add(new Step(unquote(fields.get("name")), fields.get("eventThread"), start,
+                                   start + toNanos(fields.get("duration")) / 1000000));
+            }
+        }
+        else if ("jdk.ObjectAllocationSample".equals(eventType)) {
+            add(allocatedBytes, withoutClassLoader(fields.get("objectClass")) + " at " + topFrame,
+                toBytes(fields.get("weight")));
+        }
+        else if ("jdk.ObjectAllocationInNewTLAB".equals(eventType)) {
+            add(tlabAllocatedBytes, withoutClassLoader(fields.get("objectClass")) + " at " + topFrame,
+                toBytes(fields.get("tlabSize")));
+        }
+        else if ("jdk.ObjectAllocationOutsideTLAB".equals(eventType)) {
+            add(tlabAllocatedBytes, withoutClassLoader(fields.get("objectClass")) + " at " + topFrame,
+                toBytes(fields.get("allocationSize")));
+        }
+        else if ("jdk.JavaMonitorEnter".equals(eventType)) {
+            add(contentionNanos, withoutClassLoader(fields.get("monitorClass")) + " at " + topFrame,
+                toNanos(fields.get("duration")));
+        }
+        else if ("jdk.GarbageCollection".equals(eventType)) {
+            String pause = fields.containsKey("sumOfPauses") ? fields.get("sumOfPauses") : fields.get("duration");
+            long pauseNanos = toNanos(pause);
+            gcPauseCount++;
+            gcPauseTotalNanos += pauseNanos;
+            gcPauseMaxNanos = Math.max(gcPauseMaxNanos, toNanos(fields.containsKey("longestPause")
+                                                                ? fields.get("longestPause") : pause));
+        }
+    }
+
+
+    /**
+     * Compte les echantillons par etape, dans l'ordre des etapes ; un echantillon couvert par des etapes imbriquees
+     * compte pour la plus interne (la derniere commencee).
+     */
+    private Map<String, Long> countStepSamples() {
+        Map<String, Long> stepSamples = new LinkedHashMap<String, Long>();
+        for (Step step : steps) {
+            stepSamples.put(step.name, 0L);
+        }
+        for (Sample sample : samples) {
+            Step found = null;
+            for (Step step : steps) {
+                if (step.covers(sample) && (found == null || step.start >= found.start)) {
+                    found = step;
+                }
+            }
+            add(stepSamples, (found == null ? OTHER_STEP : found.name), 1);
+        }
+        return stepSamples;
+    }
+
+
+    private double percent(long samples) {
+        return (sampleCount == 0 ? 0 : samples * 100.0 / sampleCount);
+    }
+
+
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> values) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(values.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> first, Map.Entry<String, Long> second) {
+                return second.getValue().compareTo(first.getValue());
+            }
+        });
+        return entries.subList(0, Math.min(TOP_SIZE, entries.size()));
+    }
+
+
+    private static void add(Map<String, Long> values, String key, long value) {
+        values.put(key, get(values, key) + value);
+    }
+
+
+    private static long get(Map<String, Long> values, String key) {
+        Long value = values.get(key);
+        return (value == null ? 0 : value);
+    }
+
+
+    private static String withoutClassLoader(String type) {
+        if (type == null) {
+            return "<unknown>";
+        }
+        int classLoader = type.indexOf(" (");
+        return (classLoader < 0 ? type : type.substring(0, classLoader));
+    }
+
+
+    private static String unquote(String value) {
+        return (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")
+                ? value.substring(1, value.length() - 1) : value);
+    }
+
+
+    /**
+     * Lit l'heure d'un evenement (<code>19:57:46.184</code>, suivie ou non de la date), -1 si elle est absente.
+     */
+    static long toMillisOfDay(String time) {
+        Matcher matcher = time == null ? null : TIME.matcher(time);
+        if (matcher == null || !matcher.find()) {
+            return -1;
+        }
+        String fraction = (matcher.group(4) == null ? "0" : (matcher.group(4) + "00").substring(0, 3));
+        return ((Long.parseLong(matcher.group(1)) * 60 + Long.parseLong(matcher.group(2))) * 60
+                + Long.parseLong(matcher.group(3))) * 1000 + Long.parseLong(fraction);
+    }
+
+
+    static long toBytes(String quantity) {
+        Matcher matcher = quantity == null ? null : QUANTITY.matcher(quantity);
+        if (matcher == null || !matcher.find()) {
+            return 0;
+        }
+        double value = Double.parseDouble(matcher.group(1).replace(",", ""));
+        String unit = matcher.group(2);
+        if ("kB".equals(unit)) {
+            return (long)(value * 1024);
+        }
+        if ("MB".equals(unit)) {
+            return (long)(value * 1024 * 1024);
+        }
+        if ("GB".equals(unit)) {
+            return (long)(value * 1024 * 1024 * 1024);
+        }
+        return (long)value;
+    }
+
+
+    static long toNanos(String quantity) {
+        Matcher matcher = quantity == null ? null : QUANTITY.matcher(quantity);
+        if (matcher == null || !matcher.find()) {
+            return 0;
+        }
+        double value = Double.parseDouble(matcher.group(1).replace(",", ""));
+        String unit = matcher.group(2);
+        if ("s".equals(unit)) {
+            return (long)(value * 1000000000);
+        }
+        if ("ms".equals(unit)) {
+            return (long)(value * 1000000);
+        }
+        if ("us".equals(unit)) {
+            return (long)(value * 1000);
+        }
+        return (long)value;
+    }
+
+
+    private static class Sample {
+        private final String thread;
+        private final long time;
+
+
+        Sample(String thread, long time) {
+            this.thread = thread;
+            this.time = time;
+        }
+    }
+
+    private static class Step {
+        private final String name;
+        private final String thread;
+        private final long start;
+        private final long end;
+
+
+        Step(String name, String thread, long start, long end) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.end = end;
+        }
+
+
+        boolean covers(Sample sample) {
+            return sample.time >= start && sample.time <= end
+                   && (thread == null || thread.equals(sample.thread));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+/**
+ * Extrait le pic de heap et le temps passe en GC d'un fichier produit par <code>-Xloggc</code>.
+ *
+ * <p> Les deux formats de log sont supportes : l'ancien format (<code>[GC 1024K->512K(4096K), 0.01 secs]</code>)
+ * et le format unifie des JVM 9+ (<code>GC(0) Pause Young (Normal) 24M->3M(256M) 2.345ms</code>). </p>
+ */
+class GcLogParser {
+    private static final Pattern LEGACY_PATTERN
+          = Pattern.compile("(\\d+)K->(\\d+)K\\((\\d+)K\\), ([\\d.]+) secs");
+    private static final Pattern UNIFIED_PATTERN
+          = Pattern.compile("(\\d+)([KMG])->(\\d+)[KMG]\\((\\d+)[KMG]\\) ([\\d.]+)ms");
+
+
+    GcLogParser() {
+    }
+
+
+    /**
+     * @param gcLog            fichier de log GC.
+     * @param wallClockMillis  duree totale de l'execution, utilisee pour calculer la part de temps en GC.
+     *
+     * @return les mesures, ou <code>null</code> si le fichier n'existe pas ou ne contient aucune collection.
+     */
+    public StoryTelemetry parse(File gcLog, long wallClockMillis) throws IOException {
+        if (!gcLog.isFile()) {
+            return null;
+        }
+        FileReader reader = new FileReader(gcLog);
+        try {
+            return parse(reader, wallClockMillis);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+
+    StoryTelemetry parse(Reader reader, long wallClockMillis) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        long heapPeakKb = 0;
+        double gcMillis = 0;
+        boolean found = false;
+
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+            Matcher legacy = LEGACY_PATTERN.matcher(line);
+            if (legacy.find()) {
+                heapPeakKb = Math.max(heapPeakKb, Long.parseLong(legacy.group(1)));
+                gcMillis += Double.parseDouble(legacy.group(4)) * 1000;
+                found = true;
+                continue;
+            }
+            Matcher unified = UNIFIED_PATTERN.matcher(line);
+            if (unified.find()) {
+                heapPeakKb = Math.max(heapPeakKb, toKb(Long.parseLong(unified.group(1)), unified.group(2)));
+                gcMillis += Double.parseDouble(unified.group(5));
+                found = true;
+            }
+        }
+
+        if (!found) {
+            return null;
+        }
+        double gcOverhead = wallClockMillis > 0 ? Math.min(1.0, gcMillis / wallClockMillis) : 0;
+        return new StoryTelemetry((heapPeakKb + 1023) / 1024, gcOverhead);
+    }
+
+
+    private static long toKb(long value, String unit) {
+        if ("G".equals(unit)) {
+            return value * 1024 * 1024;
+        }
+        if ("M".equals(unit)) {
+            return value * 1024;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+/**
+ * Ecrit les resultats d'un lot de tests release au format XML JUnit (un <code>testcase</code> par execution),
+ * au fil de l'eau.
+ *
+ * <p> Seuls les compteurs sont gardes en memoire. Chaque resultat est ecrit, suivi de la balise fermante, en une
+ * seule ecriture a la place de celle-ci ; les compteurs de l'entete sont ensuite mis a jour sur place, l'entete
+ * ayant une largeur fixe. Le fichier reste ainsi un document XML valide si le lot est interrompu. </p>
+ */
+class JUnitXmlResultWriter implements StoryListener {
+    private static final String ENCODING = "UTF-8";
+    private static final String FOOTER = "</testsuite>\n";
+    private static final int COUNTERS_WIDTH = 100;
+    private final Logger logger = Logger.getInstance(JUnitXmlResultWriter.class.getName());
+    private final File reportFile;
+    private final File baseDirectory;
+    private final RandomAccessFile file;
+    private final long countersPosition;
+    private long footerPosition;
+    private int tests;
+    private int failures;
+    private long totalMillis;
+
+
+    JUnitXmlResultWriter(File reportFile, String suiteName, File baseDirectory) throws IOException {
+        this.reportFile = reportFile;
+        this.baseDirectory = baseDirectory;
+        reportFile.getParentFile().mkdirs();
+        file = new RandomAccessFile(reportFile, "rw");
+        file.setLength(0);
+        file.write(("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\"?>\n<testsuite name=\""
+                    + escape(suiteName) + "\"").getBytes(ENCODING));
+        countersPosition = file.getFilePointer();
+        file.write(toBytes(counters() + ">\n"));
+        footerPosition = file.getFilePointer();
+        file.write(toBytes(FOOTER));
+    }
+
+
+    public void storyStarted(File story) {
+    }
+
+
+    public synchronized void storyFinished(StoryResult result) {
+        try {
+            byte[] testCase = toBytes(toTestCase(result));
+            byte[] footer = toBytes(FOOTER);
+            byte[] bytes = new byte[testCase.length + footer.length];
+            System.arraycopy(testCase, 0, bytes, 0, testCase.length);
+            System.arraycopy(footer, 0, bytes, testCase.length, footer.length);
+            file.seek(footerPosition);
+            file.write(bytes);
+            footerPosition += testCase.length;
+
+            tests++;
+            failures += (result.isSuccess() ? 0 : 1);
+            totalMillis += result.getDurationMillis();
+            file.seek(countersPosition);
+            file.write(toBytes(counters()));
+        }
+        catch (IOException e) {
+            logger.warn("Impossible d'ecrire le resultat de " + result.getStory() + " dans " + reportFile, e);
+        }
+    }
+
+
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+
+    private String counters() {
+        StringBuilder counters = new StringBuilder()
+              .append(" tests=\"").append(tests)
+              .append("\" failures=\"").append(failures)
+              .append("\" errors=\"0\" skipped=\"0\" time=\"").append(toSeconds(totalMillis)).append('"');
+        while (counters.length() < COUNTERS_WIDTH) {
+            counters.append(' ');
+        }
+        return counters.toString();
+    }
+
+
+    private String toTestCase(StoryResult result) {
+        StringBuilder testCase = new StringBuilder("  <testcase classname=\"")
+              .append(escape(toClassName(result.getStory())))
+              .append("\" name=\"").append(escape(result.getStory().getName()))
+              .append(result.isRetry() ? " (retry " + result.getAttempt() + ")" : "")
+              .append("\" time=\"").append(toSeconds(result.getDurationMillis())).append('"');
+        if (result.isSuccess()) {
+            return testCase.append("/>\n").toString();
+        }
+        return testCase.append(">\n    <failure message=\"Exit code ").append(result.getExitCode()).append("\">")
+              .append(escape(result.getFailureExcerpt()))
+              .append("</failure>\n  </testcase>\n")
+              .toString();
+    }
+
+
+    private String toClassName(File story) {
+        String base = baseDirectory.getAbsolutePath();
+        String parent = story.getAbsoluteFile().getParent();
+        if (parent == null || !parent.startsWith(base) || parent.length() == base.length()) {
+            return "release-test";
+        }
+        return parent.substring(base.length() + 1).replace(File.separatorChar, '.');
+    }
+
+
+    private static String toSeconds(long millis) {
+        return String.format(Locale.ENGLISH, "%.3f", millis / 1000.0);
+    }
+
+
+    private static byte[] toBytes(String text) throws IOException {
+        return text.getBytes(ENCODING);
+    }
+
+
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char current = text.charAt(i);
+            switch (current) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                default:
+                    if ((current >= 0x20 && current < 0xFFFE) || current == '\t' || current == '\n'
+                        || current == '\r') {
+                        escaped.append(current);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+}
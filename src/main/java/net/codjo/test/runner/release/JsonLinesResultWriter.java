@@ -0,0 +1,98 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+/**
+ * Ecrit les resultats d'un lot de tests release au format JSON, un objet par ligne et par execution, au fil de
+ * l'eau.
+ *
+ * <p> Chaque ligne est ecrite d'un bloc : si le lot est interrompu, toutes les lignes deja ecrites restent
+ * exploitables. </p>
+ */
+class JsonLinesResultWriter implements StoryListener {
+    private static final String ENCODING = "UTF-8";
+    private final Logger logger = Logger.getInstance(JsonLinesResultWriter.class.getName());
+    private final File reportFile;
+    private final OutputStream outputStream;
+
+
+    JsonLinesResultWriter(File reportFile) throws IOException {
+        this.reportFile = reportFile;
+        reportFile.getParentFile().mkdirs();
+        outputStream = new FileOutputStream(reportFile);
+    }
+
+
+    public void storyStarted(File story) {
+    }
+
+
+    public synchronized void storyFinished(StoryResult result) {
+        try {
+            outputStream.write(toJson(result).getBytes(ENCODING));
+            outputStream.flush();
+        }
+        catch (IOException e) {
+            logger.warn("Impossible d'ecrire le resultat de " + result.getStory() + " dans " + reportFile, e);
+        }
+    }
+
+
+    public synchronized void close() throws IOException {
+        outputStream.close();
+    }
+
+
+    static String toJson(StoryResult result) {
+        StringBuilder json = new StringBuilder("{\"name\":").append(quote(result.getStory().getName()))
+              .append(",\"path\":").append(quote(result.getStory().getPath()))
+              .append(",\"status\":").append(quote(result.isSuccess() ? "passed" : "failed"))
+              .append(",\"exitCode\":").append(result.getExitCode())
+              .append(",\"durationMillis\":").append(result.getDurationMillis())
+              .append(",\"attempt\":").append(result.getAttempt());
+        if (!result.isSuccess()) {
+            json.append(",\"failure\":").append(quote(result.getFailureExcerpt()));
+        }
+        return json.append("}\n").toString();
+    }
+
+
+    static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char current = text.charAt(i);
+            switch (current) {
+                case '"':
+                    quoted.append("\\\"");
+                    break;
+                case '\\':
+                    quoted.append("\\\\");
+                    break;
+                case '\n':
+                    quoted.append("\\n");
+                    break;
+                case '\r':
+                    quoted.append("\\r");
+                    break;
+                case '\t':
+                    quoted.append("\\t");
+                    break;
+                default:
+                    if (current < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int)current));
+                    }
+                    else {
+                        quoted.append(current);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
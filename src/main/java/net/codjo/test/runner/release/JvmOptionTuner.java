@@ -0,0 +1,241 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * Calcule la taille de heap et le GC d'un test release a partir des mesures de sa derniere execution.
+ *
+ * <p> Les parametres VM saisis par l'utilisateur sont prioritaires : une option deja presente (-Xmx, -Xms ou
+ * choix du GC) n'est jamais surchargee. Le -Xms calcule est borne par le -Xmx saisi, sous peine d'une JVM qui refuse
+ * de demarrer. </p>
+ *
+ * <p> Des qu'un parametre lie au GC est saisi (choix ou reglage du collecteur, log du GC), le tuner ne choisit pas
+ * le GC et n'ajoute pas son propre log du GC ({@link Tuning#isGcLogEnabled()}) : les mesures du test release ne
+ * sont alors pas mises a jour. </p>
+ */
+class JvmOptionTuner {
+    static final long MIN_HEAP_MB = 128;
+    static final long HEAP_ROUNDING_MB = 64;
+    static final double HEAP_HEADROOM = 1.5;
+    static final long SMALL_HEAP_MB = 256;
+    static final double GC_OVERHEAD_THRESHOLD = 0.10;
+
+
+    JvmOptionTuner() {
+    }
+
+
+    public Tuning tune(StoryTelemetry telemetry, String[] userParameters) {
+        Tuning tuning = new Tuning();
+        List<String> userGcParameters = findUserGcParameters(userParameters);
+        if (!userGcParameters.isEmpty()) {
+            tuning.gcLogEnabled = false;
+            tuning.reasons.add("GC settings set by user (" + join(userGcParameters)
+                               + "), kept: no GC choice and no GC log added, telemetry not recorded");
+        }
+        if (telemetry == null) {
+            tuning.reasons.add("no telemetry recorded yet, default JVM settings kept");
+            return tuning;
+        }
+
+        long maxHeap = Math.max(MIN_HEAP_MB, roundUp((long)(telemetry.getHeapPeakMb() * HEAP_HEADROOM)));
+        long initialHeap = Math.min(maxHeap, roundUp(telemetry.getHeapPeakMb()));
+
+        String userMaxHeap = findUserParameter(userParameters, "-Xmx");
+        long userMaxHeapMb = -1;
+        if (userMaxHeap != null) {
+            userMaxHeapMb = toMegaBytes(userMaxHeap.substring("-Xmx".length()));
+            tuning.reasons.add("-Xmx set by user, kept");
+        }
+        else {
+            tuning.options.add("-Xmx" + maxHeap + "m");
+            tuning.reasons.add("-Xmx" + maxHeap + "m: heap peak was " + telemetry.getHeapPeakMb() + "m");
+        }
+
+        if (hasUserParameter(userParameters, "-Xms")) {
+            tuning.reasons.add("-Xms set by user, kept");
+        }
+        else if (userMaxHeap != null && userMaxHeapMb < 0) {
+            tuning.reasons.add("-Xms not set: " + userMaxHeap + " set by user could not be read");
+        }
+        else if (userMaxHeap != null && initialHeap > userMaxHeapMb) {
+            tuning.options.add("-Xms" + userMaxHeapMb + "m");
+            tuning.reasons.add("-Xms" + userMaxHeapMb + "m: capped to " + userMaxHeap + " set by user");
+        }
+        else {
+            tuning.options.add("-Xms" + initialHeap + "m");
+            tuning.reasons.add("-Xms" + initialHeap + "m: avoids heap resizing up to the previous peak");
+        }
+
+        String overhead = Math.round(telemetry.getGcOverhead() * 100) + "%";
+        if (!userGcParameters.isEmpty()) {
+            return tuning;
+        }
+        if (telemetry.getGcOverhead() > GC_OVERHEAD_THRESHOLD) {
+            tuning.options.add("-XX:+UseParallelGC");
+            tuning.reasons.add("-XX:+UseParallelGC: GC overhead was " + overhead);
+        }
+        else if (maxHeap <= SMALL_HEAP_MB) {
+            tuning.options.add("-XX:+UseSerialGC");
+            tuning.reasons.add("-XX:+UseSerialGC: small heap and GC overhead was " + overhead);
+        }
+        else {
+            tuning.reasons.add("default garbage collector kept: GC overhead was " + overhead);
+        }
+        return tuning;
+    }
+
+
+    private static long roundUp(long megaBytes) {
+        return ((megaBytes + HEAP_ROUNDING_MB - 1) / HEAP_ROUNDING_MB) * HEAP_ROUNDING_MB;
+    }
+
+
+    /**
+     * @param size taille au format des options -Xmx/-Xms (<code>1g</code>, <code>512m</code>, <code>2048k</code> ou
+     *             un nombre d'octets).
+     *
+     * @return la taille en mega-octets (arrondie a l'inferieur), -1 si elle est illisible ou inferieure a 1 Mo.
+     */
+    static long toMegaBytes(String size) {
+        if (size.length() == 0) {
+            return -1;
+        }
+        char unit = Character.toLowerCase(size.charAt(size.length() - 1));
+        String digits = (Character.isDigit(unit) ? size : size.substring(0, size.length() - 1));
+        long value;
+        try {
+            value = Long.parseLong(digits);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+        long megaBytes;
+        switch (unit) {
+            case 'g':
+                megaBytes = value * 1024;
+                break;
+            case 'm':
+                megaBytes = value;
+                break;
+            case 'k':
+                megaBytes = value / 1024;
+                break;
+            default:
+                megaBytes = (Character.isDigit(unit) ? value / (1024 * 1024) : -1);
+        }
+        return (megaBytes < 1 ? -1 : megaBytes);
+    }
+
+
+    private static boolean hasUserParameter(String[] userParameters, String prefix) {
+        return findUserParameter(userParameters, prefix) != null;
+    }
+
+
+    private static String findUserParameter(String[] userParameters, String prefix) {
+        if (userParameters == null) {
+            return null;
+        }
+        for (String parameter : userParameters) {
+            if (parameter.startsWith(prefix)) {
+                return parameter;
+            }
+        }
+        return null;
+    }
+
+
+    private static List<String> findUserGcParameters(String[] userParameters) {
+        List<String> gcParameters = new ArrayList<String>();
+        if (userParameters == null) {
+            return gcParameters;
+        }
+        for (String parameter : userParameters) {
+            if (isGcParameter(parameter)) {
+                gcParameters.add(parameter);
+            }
+        }
+        return gcParameters;
+    }
+
+
+    /**
+     * @return <code>true</code> pour un choix ou reglage du collecteur (<code>-XX:+UseG1GC</code>,
+     *         <code>-XX:-UseParNewGC</code>, <code>-XX:ParallelGCThreads=4</code>, <code>-XX:CMS...</code>,
+     *         <code>-XX:G1...</code>) ou un log du GC (<code>-Xloggc:</code>, <code>-Xlog:gc*</code>,
+     *         <code>-verbose:gc</code>, <code>-XX:+PrintGC...</code>).
+     */
+    static boolean isGcParameter(String parameter) {
+        if (parameter.startsWith("-Xloggc") || parameter.equals("-verbose:gc") || parameter.startsWith("-Xincgc")) {
+            return true;
+        }
+        if (parameter.startsWith("-Xlog:")) {
+            String selection = parameter.substring("-Xlog:".length());
+            int output = selection.indexOf(':');
+            for (String tags : (output < 0 ? selection : selection.substring(0, output)).split(",")) {
+                if (tags.startsWith("gc") || tags.startsWith("all")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (parameter.startsWith("-XX:")) {
+            String option = parameter.substring("-XX:".length()).replaceFirst("^[+-]", "");
+            return option.contains("GC") || option.startsWith("CMS") || option.startsWith("G1")
+                   || option.startsWith("Shenandoah");
+        }
+        return false;
+    }
+
+
+    private static String join(List<String> parameters) {
+        StringBuilder joined = new StringBuilder();
+        for (String parameter : parameters) {
+            joined.append(joined.length() == 0 ? "" : " ").append(parameter);
+        }
+        return joined.toString();
+    }
+
+
+    /**
+     * Options VM retenues et justification de chaque choix.
+     */
+    static class Tuning {
+        private final List<String> options = new ArrayList<String>();
+        private final List<String> reasons = new ArrayList<String>();
+        private boolean gcLogEnabled = true;
+
+
+        public List<String> getOptions() {
+            return options;
+        }
+
+
+        /**
+         * @return <code>false</code> si l'utilisateur a saisi un parametre lie au GC : le log du GC qui alimente les
+         *         mesures ne doit pas etre ajoute.
+         */
+        public boolean isGcLogEnabled() {
+            return gcLogEnabled;
+        }
+
+
+        public List<String> getReasons() {
+            return reasons;
+        }
+
+
+        public String toReport(String story) {
+            StringBuilder report = new StringBuilder("Adaptive JVM tuning for ").append(story).append('\n');
+            for (String reason : reasons) {
+                report.append("  ").append(reason).append('\n');
+            }
+            return report.toString();
+        }
+    }
+}
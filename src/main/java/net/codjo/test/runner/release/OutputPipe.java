@@ -0,0 +1,121 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+/**
+ * Tube en memoire reliant plusieurs ecrivains successifs ou concurrents a un lecteur unique.
+ *
+ * <p> Contrairement a {@link java.io.PipedInputStream}, la fin d'un thread ecrivain ne casse pas le tube : seule
+ * la fermeture de {@link #getOutputStream()} signale la fin de flux au lecteur. </p>
+ */
+class OutputPipe {
+    private final Object lock = new Object();
+    private byte[] buffer = new byte[8192];
+    private int start;
+    private int end;
+    private boolean closed;
+    private final InputStream inputStream = new PipeInputStream();
+    private final OutputStream outputStream = new PipeOutputStream();
+
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+
+    /**
+     * Signale la fin de flux au lecteur, une fois les donnees deja ecrites lues.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+
+    private class PipeInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return (read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF);
+        }
+
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (lock) {
+                while (start == end && !closed) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Lecture interrompue");
+                    }
+                }
+                if (start == end) {
+                    return -1;
+                }
+                int count = Math.min(length, end - start);
+                System.arraycopy(buffer, start, bytes, offset, count);
+                start += count;
+                return count;
+            }
+        }
+
+
+        @Override
+        public int available() {
+            synchronized (lock) {
+                return end - start;
+            }
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        @Override
+        public void write(int value) throws IOException {
+            write(new byte[]{(byte)value}, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (lock) {
+                if (closed) {
+                    throw new IOException("Tube ferme");
+                }
+                if (end + length > buffer.length) {
+                    int size = end - start;
+                    byte[] target = (size + length > buffer.length)
+                                    ? new byte[Math.max(buffer.length * 2, size + length)]
+                                    : buffer;
+                    System.arraycopy(buffer, start, target, 0, size);
+                    buffer = target;
+                    start = 0;
+                    end = size;
+                }
+                System.arraycopy(bytes, offset, buffer, end, length);
+                end += length;
+                lock.notifyAll();
+            }
+        }
+
+
+        @Override
+        public void close() {
+            OutputPipe.this.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.OutputStream;
+/**
+ * Flux conservant uniquement les derniers octets ecrits (buffer circulaire de taille fixe).
+ *
+ * <p> Utilise pour extraire la fin de la sortie d'un runner en echec sans conserver toute sa sortie. Les
+ * ecritures peuvent provenir de plusieurs threads (sortie standard et sortie d'erreur du runner). </p>
+ */
+class OutputTail extends OutputStream {
+    private final byte[] buffer;
+    private int end;
+    private boolean full;
+
+
+    OutputTail(int size) {
+        buffer = new byte[size];
+    }
+
+
+    @Override
+    public synchronized void write(int value) {
+        buffer[end] = (byte)value;
+        end = (end + 1) % buffer.length;
+        full |= (end == 0);
+    }
+
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        if (length >= buffer.length) {
+            System.arraycopy(bytes, offset + length - buffer.length, buffer, 0, buffer.length);
+            end = 0;
+            full = true;
+            return;
+        }
+        int firstPart = Math.min(length, buffer.length - end);
+        System.arraycopy(bytes, offset, buffer, end, firstPart);
+        System.arraycopy(bytes, offset + firstPart, buffer, 0, length - firstPart);
+        full |= (end + length >= buffer.length);
+        end = (end + length) % buffer.length;
+    }
+
+
+    /**
+     * @return les derniers octets ecrits ; si le debut de la sortie a ete perdu, la premiere ligne (tronquee) est
+     *         retiree.
+     */
+    @Override
+    public synchronized String toString() {
+        if (!full) {
+            return new String(buffer, 0, end);
+        }
+        byte[] content = new byte[buffer.length];
+        System.arraycopy(buffer, end, content, 0, buffer.length - end);
+        System.arraycopy(buffer, 0, content, buffer.length - end, end);
+        String text = new String(content);
+        int firstLineEnd = text.indexOf('\n');
+        return (firstLineEnd < 0 ? text : text.substring(firstLineEnd + 1));
+    }
+}
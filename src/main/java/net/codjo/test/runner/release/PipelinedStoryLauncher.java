@@ -0,0 +1,364 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+/**
+ * Lance les runners d'un lot de tests release en preparant le suivant pendant que le courant s'execute.
+ *
+ * <p> Les lignes de commande des {@link #PREPARE_AHEAD} prochains tests release sont construites en tache de fond, et
+ * un runner est demarre a l'avance pour le prochain test release : ce runner ({@link StoryLauncher}) charge la classe
+ * principale puis attend sur son entree standard le chemin du test release. Le passage d'un test release au suivant
+ * se reduit ainsi a l'ecriture de ce chemin. </p>
+ *
+ * <p> Un runner pre-demarre n'est utilise que si sa ligne de commande est celle du test release demande (les options
+ * de la JVM peuvent dependre du test release) ; sinon il est arrete et un runner est demarre a la demande. Il occupe
+ * une place du {@link StoryScheduler} : il n'est demarre que si une place est libre, et le test release qui l'utilise
+ * reprend cette place (cf. {@link #claimSlot(File)}). Le runner pre-demarre est reserve
+ * aux lots sequentiels (cf. {@link #setIdleRunnerEnabled(boolean)}) : dans un lot parallele, le prochain test release
+ * est souvent deja en cours de lancement, et deux runners du meme test release se disputeraient son journal du GC et
+ * son enregistrement JFR. </p>
+ *
+ * <p> Gain mesure (cf. <code>PipelinedStoryLauncherBenchmark</code> dans les sources de test) : avec un runner minimal,
+ * le delai entre la demande de lancement et le debut du test release passe d'environ 60 ms a 2-3 ms, soit le seul
+ * demarrage de la JVM. Cette mesure n'inclut ni la construction des <code>JavaParameters</code> (classpath du module),
+ * ni le chargement des classes d'un vrai runner, tous deux egalement faits a l'avance mais non mesurables hors de
+ * l'IDE. </p>
+ *
+ * <p> En tant que {@link StoryListener}, le lanceur attend la fin de la preparation du test release annonce : les
+ * listeners enregistres apres lui voient un test release prepare. </p>
+ */
+class PipelinedStoryLauncher implements PreStartedProcessFactory, StoryListener {
+    static final int PREPARE_AHEAD = 2;
+    private final File workingDirectory;
+    private final CommandFactory commandFactory;
+    private final LinkedList<File> upcoming;
+    private final Map<File, Future<List<String>>> commands = new HashMap<File, Future<List<String>>>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ReleaseTest-Launcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private StoryScheduler scheduler = StoryScheduler.getInstance();
+    private boolean idleRunnerEnabled = true;
+    private IdleRunner idleRunner;
+    private final Map<File, IdleRunner> claimedRunners = new HashMap<File, IdleRunner>();
+    private File spawningFor;
+    private boolean closed;
+
+
+    /**
+     * @param stories        tests release du lot, dans l'ordre de lancement prevu.
+     * @param commandFactory construit la ligne de commande d'un runner en attente de son test release.
+     */
+    PipelinedStoryLauncher(List<File> stories, File workingDirectory, CommandFactory commandFactory) {
+        this.upcoming = new LinkedList<File>(stories);
+        this.workingDirectory = workingDirectory;
+        this.commandFactory = commandFactory;
+    }
+
+
+    void setScheduler(StoryScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+
+    /**
+     * Active le runner pre-demarre (par defaut) ; a desactiver pour un lot execute en parallele.
+     */
+    public synchronized void setIdleRunnerEnabled(boolean idleRunnerEnabled) {
+        this.idleRunnerEnabled = idleRunnerEnabled;
+    }
+
+
+    /**
+     * Prepare les premiers tests release du lot et demarre le runner du premier.
+     */
+    public synchronized void open() {
+        prepareUpcoming();
+    }
+
+
+    public synchronized boolean claimSlot(File story) throws InterruptedException {
+        while (!closed && story.equals(spawningFor)) {
+            wait();
+        }
+        if (closed || idleRunner == null) {
+            return false;
+        }
+        IdleRunner runner = idleRunner;
+        idleRunner = null;
+        if (!runner.story.equals(story)) {
+            // Runner d'un autre test release : sa place est rendue, sans quoi le lot pourrait l'attendre.
+            discard(runner);
+            return false;
+        }
+        runner.slotClaimed = true;
+        claimedRunners.put(story, runner);
+        return true;
+    }
+
+
+    public Process start(File story) throws IOException {
+        List<String> command = getCommand(story);
+        IdleRunner runner;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Le lanceur est arrete");
+            }
+            upcoming.remove(story);
+            runner = claimedRunners.remove(story);
+            if (runner == null) {
+                runner = idleRunner;
+                idleRunner = null;
+            }
+            if (runner != null && (!runner.command.equals(command) || !isAlive(runner.process))) {
+                discard(runner);
+                runner = null;
+            }
+        }
+
+        try {
+            if (runner != null) {
+                try {
+                    Process process = handOver(runner.process, story);
+                    releaseSlot(runner);
+                    return process;
+                }
+                catch (IOException e) {
+                    // Le runner pre-demarre s'est arrete : un autre est demarre.
+                    discard(runner);
+                }
+            }
+            return handOver(startRunner(command), story);
+        }
+        finally {
+            // Une fois la place du runner rendue, pour que le suivant puisse la prendre.
+            prepareNext();
+        }
+    }
+
+
+    public void storyStarted(File story) {
+        try {
+            getCommand(story);
+        }
+        catch (IOException e) {
+            // Signale au lancement du runner.
+        }
+    }
+
+
+    public void storyFinished(StoryResult result) {
+    }
+
+
+    /**
+     * Arrete le runner pre-demarre ; les runners deja lances ne sont pas concernes.
+     */
+    public synchronized void close() {
+        closed = true;
+        executor.shutdownNow();
+        if (idleRunner != null) {
+            discard(idleRunner);
+            idleRunner = null;
+        }
+        for (IdleRunner runner : claimedRunners.values()) {
+            discard(runner);
+        }
+        claimedRunners.clear();
+        notifyAll();
+    }
+
+
+    synchronized boolean hasIdleRunner() {
+        return idleRunner != null;
+    }
+
+
+    private synchronized void prepareNext() {
+        if (!closed) {
+            prepareUpcoming();
+        }
+    }
+
+
+    private void prepareUpcoming() {
+        int count = 0;
+        for (File story : upcoming) {
+            if (count++ == PREPARE_AHEAD) {
+                break;
+            }
+            prepareCommand(story);
+        }
+        if (idleRunnerEnabled && !upcoming.isEmpty()) {
+            spawnIdleRunner(upcoming.getFirst());
+        }
+    }
+
+
+    private Future<List<String>> prepareCommand(final File story) {
+        Future<List<String>> command = commands.get(story);
+        if (command == null) {
+            command = executor.submit(new Callable<List<String>>() {
+                public List<String> call() throws IOException {
+                    return commandFactory.createCommand(story);
+                }
+            });
+            commands.put(story, command);
+        }
+        return command;
+    }
+
+
+    private void spawnIdleRunner(final File story) {
+        if (story.equals(spawningFor)) {
+            return;
+        }
+        spawningFor = story;
+        final Future<List<String>> command = prepareCommand(story);
+        executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                IdleRunner runner = null;
+                try {
+                    if (scheduler.tryAcquire()) {
+                        try {
+                            runner = new IdleRunner(story, command.get(), startRunner(command.get()));
+                        }
+                        finally {
+                            if (runner == null) {
+                                scheduler.release();
+                            }
+                        }
+                    }
+                }
+                finally {
+                    idleRunnerStarted(story, runner);
+                }
+                return null;
+            }
+        });
+    }
+
+
+    private synchronized void idleRunnerStarted(File story, IdleRunner runner) {
+        if (story.equals(spawningFor)) {
+            spawningFor = null;
+            notifyAll();
+        }
+        if (runner == null) {
+            return;
+        }
+        if (closed || idleRunner != null || !story.equals(upcoming.peek())) {
+            discard(runner);
+        }
+        else {
+            idleRunner = runner;
+        }
+    }
+
+
+    private List<String> getCommand(File story) throws IOException {
+        Future<List<String>> command;
+        synchronized (this) {
+            command = (closed ? null : prepareCommand(story));
+        }
+        if (command == null) {
+            throw new IOException("Le lanceur est arrete");
+        }
+        try {
+            return command.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Preparation de " + story + " interrompue");
+        }
+        catch (ExecutionException e) {
+            synchronized (this) {
+                commands.remove(story);
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Preparation de " + story + " impossible : " + e.getCause());
+        }
+    }
+
+
+    private Process startRunner(List<String> command) throws IOException {
+        return new ProcessBuilder(command).directory(workingDirectory).start();
+    }
+
+
+    private void discard(IdleRunner runner) {
+        runner.process.destroy();
+        releaseSlot(runner);
+    }
+
+
+    /**
+     * Rend la place du runner, sauf si elle a ete cedee au test release (le lot la rend a sa fin).
+     */
+    private void releaseSlot(IdleRunner runner) {
+        if (!runner.slotClaimed) {
+            scheduler.release();
+        }
+    }
+
+
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        }
+        catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+
+    private static Process handOver(Process process, File story) throws IOException {
+        OutputStream input = process.getOutputStream();
+        input.write((story.getPath() + "\n").getBytes("UTF-8"));
+        input.close();
+        return process;
+    }
+
+
+    /**
+     * Construit la ligne de commande d'un runner {@link StoryLauncher}, sans le chemin du test release.
+     */
+    interface CommandFactory {
+        List<String> createCommand(File story) throws IOException;
+    }
+
+    private static class IdleRunner {
+        private final File story;
+        private final List<String> command;
+        private final Process process;
+        private boolean slotClaimed;
+
+
+        IdleRunner(File story, List<String> command, Process process) {
+            this.story = story;
+            this.command = command;
+            this.process = process;
+        }
+    }
+}
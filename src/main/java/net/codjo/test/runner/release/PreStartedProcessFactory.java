@@ -0,0 +1,20 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+/**
+ * {@link StoryProcessFactory} demarrant des runners a l'avance. Un runner pre-demarre occupe deja une place du
+ * {@link StoryScheduler} : le test release qui l'utilise reprend cette place au lieu d'en demander une seconde.
+ */
+interface PreStartedProcessFactory extends StoryProcessFactory {
+    /**
+     * Attend la fin du demarrage eventuel du runner de <code>story</code>, puis lui cede sa place.
+     *
+     * @return <code>true</code> si la place du runner pre-demarre est cedee : l'appelant la libere a la fin du test
+     *         release ({@link StoryScheduler#release()}) sans l'avoir acquise.
+     */
+    boolean claimSlot(File story) throws InterruptedException;
+}
@@ -13,10 +13,14 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.options.SettingsEditor;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.InvalidDataException;
 import com.intellij.openapi.util.JDOMExternalizer;
 import com.intellij.openapi.util.WriteExternalException;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -25,11 +29,35 @@ public class ReleaseTestRunConfiguration extends RuntimeConfiguration {
     private static final String FILE_ATTRIBUTE = "file";
     private static final String MODULE_ATTRIBUTE = "module";
     private static final String VM_PARAMETERS_ATTRIBUTE = "vmParameters";
-    private final FileFormatRecognizer recognizer = new FileFormatRecognizer();
+    private static final String ADAPTIVE_VM_TUNING_ATTRIBUTE = "adaptiveVmTuning";
+    private static final String WATCH_MODE_ATTRIBUTE = "watchMode";
+    private static final String CHANGED_SINCE_LAST_GREEN_ATTRIBUTE = "changedSinceLastGreen";
+    private static final String RETRY_COUNT_ATTRIBUTE = "retryCount";
+    private static final String PROFILE_ATTRIBUTE = "profile";
+    private static final String COORDINATOR_PORT_ATTRIBUTE = "coordinatorPort";
+    private static final String COORDINATOR_ADDRESS_ATTRIBUTE = "coordinatorAddress";
+    private static final String WRITE_REPORTS_ATTRIBUTE = "writeReports";
+    private static final String COMPOUND_ATTRIBUTE = "compound";
+    private static final String STORY_PATTERNS_ATTRIBUTE = "storyPatterns";
+    private static final String PARALLEL_RUNNERS_ATTRIBUTE = "parallelRunners";
+    private static final String PATTERN_SEPARATOR = ";";
+    static final int DEFAULT_PARALLEL_RUNNERS = 2;
     private String releaseTestFileName;
     private String vmParameters;
     private String[] vmParameterList;
     private Module targetModule;
+    private boolean adaptiveVmTuning;
+    private boolean watchMode;
+    private boolean changedSinceLastGreen;
+    private int retryCount;
+    private boolean profile;
+    private boolean writeReports;
+    private int coordinatorPort;
+    private String coordinatorAddress = "";
+    private boolean compound;
+    private List<String> storyPatterns = new ArrayList<String>();
+    private int parallelRunners = DEFAULT_PARALLEL_RUNNERS;
+    private StoryWatcher storyWatcher;
 
 
     public ReleaseTestRunConfiguration(ReleaseTestConfigurationFactory factory,
@@ -53,6 +81,22 @@ public class ReleaseTestRunConfiguration extends RuntimeConfiguration {
         String fileAttribute = JDOMExternalizer.readString(element, FILE_ATTRIBUTE);
         setReleaseTestFileName(fileAttribute);
 
+        setAdaptiveVmTuning(JDOMExternalizer.readBoolean(element, ADAPTIVE_VM_TUNING_ATTRIBUTE));
+        setWatchMode(JDOMExternalizer.readBoolean(element, WATCH_MODE_ATTRIBUTE));
+        setChangedSinceLastGreen(JDOMExternalizer.readBoolean(element, CHANGED_SINCE_LAST_GREEN_ATTRIBUTE));
+        setRetryCount(JDOMExternalizer.readInteger(element, RETRY_COUNT_ATTRIBUTE, 0));
+        setProfile(JDOMExternalizer.readBoolean(element, PROFILE_ATTRIBUTE));
+        setWriteReports(JDOMExternalizer.readBoolean(element, WRITE_REPORTS_ATTRIBUTE));
+        setCoordinatorPort(JDOMExternalizer.readInteger(element, COORDINATOR_PORT_ATTRIBUTE, 0));
+        setCoordinatorAddress(JDOMExternalizer.readString(element, COORDINATOR_ADDRESS_ATTRIBUTE));
+        setCompound(JDOMExternalizer.readBoolean(element, COMPOUND_ATTRIBUTE));
+        String patternsAttribute = JDOMExternalizer.readString(element, STORY_PATTERNS_ATTRIBUTE);
+        setStoryPatterns(patternsAttribute == null
+                         ? new ArrayList<String>()
+                         : Arrays.asList(patternsAttribute.split(PATTERN_SEPARATOR)));
+        setParallelRunners(JDOMExternalizer.readInteger(element, PARALLEL_RUNNERS_ATTRIBUTE,
+                                                        DEFAULT_PARALLEL_RUNNERS));
+
         setTargetModule(ModuleManager.getInstance(getProject()).findModuleByName(moduleName));
     }
 
@@ -63,6 +107,17 @@ public class ReleaseTestRunConfiguration extends RuntimeConfiguration {
         JDOMExternalizer.write(element, FILE_ATTRIBUTE, getReleaseTestFileName());
         JDOMExternalizer.write(element, VM_PARAMETERS_ATTRIBUTE, getVMParameters());
         JDOMExternalizer.write(element, MODULE_ATTRIBUTE, getTargetModuleName());
+        JDOMExternalizer.write(element, ADAPTIVE_VM_TUNING_ATTRIBUTE, isAdaptiveVmTuning());
+        JDOMExternalizer.write(element, WATCH_MODE_ATTRIBUTE, isWatchMode());
+        JDOMExternalizer.write(element, CHANGED_SINCE_LAST_GREEN_ATTRIBUTE, isChangedSinceLastGreen());
+        JDOMExternalizer.write(element, RETRY_COUNT_ATTRIBUTE, getRetryCount());
+        JDOMExternalizer.write(element, PROFILE_ATTRIBUTE, isProfile());
+        JDOMExternalizer.write(element, WRITE_REPORTS_ATTRIBUTE, isWriteReports());
+        JDOMExternalizer.write(element, COORDINATOR_PORT_ATTRIBUTE, getCoordinatorPort());
+        JDOMExternalizer.write(element, COORDINATOR_ADDRESS_ATTRIBUTE, getCoordinatorAddress());
+        JDOMExternalizer.write(element, COMPOUND_ATTRIBUTE, isCompound());
+        JDOMExternalizer.write(element, STORY_PATTERNS_ATTRIBUTE, joinStoryPatterns());
+        JDOMExternalizer.write(element, PARALLEL_RUNNERS_ATTRIBUTE, getParallelRunners());
     }
 
 
@@ -74,6 +129,10 @@ public class ReleaseTestRunConfiguration extends RuntimeConfiguration {
     public RunProfileState getState(@NotNull Executor executor,
                                     @NotNull ExecutionEnvironment executionEnvironment)
           throws ExecutionException {
+        if (watchMode && !compound && storyWatcher == null) {
+            storyWatcher = new StoryWatcher(this);
+            storyWatcher.start();
+        }
         ReleaseTestRunProfileState commandLineState = new ReleaseTestRunProfileState(executionEnvironment);
         TextConsoleBuilder consoleBuilder =
               TextConsoleBuilderFactory.getInstance().createBuilder(getProject());
@@ -93,12 +152,18 @@ public class ReleaseTestRunConfiguration extends RuntimeConfiguration {
         if (targetModule == null) {
             throw new RuntimeConfigurationException("Bad target module", "Bad Module");
         }
+        if (compound) {
+            if (storyPatterns.isEmpty()) {
+                throw new RuntimeConfigurationException("No story, directory or pattern to run", "Bad Stories");
+            }
+            return;
+        }
         if (releaseTestFileName == null
             || "".equals(releaseTestFileName)
             || !new File(releaseTestFileName).exists()) {
             throw new RuntimeConfigurationException("ReleaseTest file is invalid", "Bad File");
         }
-        if (!recognizer.isReleaseTestFile(releaseTestFileName)) {
+        if (!StoryIndexService.createStoryFinder(getProject()).containsStories(new File(releaseTestFileName))) {
             throw new RuntimeConfigurationException("ReleaseTest file format is invalid", "Bad File Format");
         }
     }
@@ -148,4 +213,190 @@ public class ReleaseTestRunConfiguration extends RuntimeConfiguration {
     public String[] getVmParameterAsArray() {
         return vmParameterList;
     }
+
+
+    public boolean isAdaptiveVmTuning() {
+        return adaptiveVmTuning;
+    }
+
+
+    public void setAdaptiveVmTuning(boolean adaptiveVmTuning) {
+        this.adaptiveVmTuning = adaptiveVmTuning;
+    }
+
+
+    public boolean isWatchMode() {
+        return watchMode;
+    }
+
+
+    public void setWatchMode(boolean watchMode) {
+        this.watchMode = watchMode;
+        if (!watchMode && storyWatcher != null) {
+            Disposer.dispose(storyWatcher);
+            storyWatcher = null;
+        }
+    }
+
+
+    public boolean isChangedSinceLastGreen() {
+        return changedSinceLastGreen;
+    }
+
+
+    public void setChangedSinceLastGreen(boolean changedSinceLastGreen) {
+        this.changedSinceLastGreen = changedSinceLastGreen;
+    }
+
+
+    /**
+     * @return le nombre de relances d'un test release en echec (0 : pas de relance).
+     */
+    public int getRetryCount() {
+        return retryCount;
+    }
+
+
+    public void setRetryCount(int retryCount) {
+        this.retryCount = Math.max(0, retryCount);
+    }
+
+
+    /**
+     * @return <code>true</code> si le runner est lance avec Flight Recorder, l'enregistrement etant resume dans la
+     *         console a la fin du test release.
+     */
+    public boolean isProfile() {
+        return profile;
+    }
+
+
+    public void setProfile(boolean profile) {
+        this.profile = profile;
+    }
+
+
+    /**
+     * @return <code>true</code> si les resultats de chaque test release sont ecrits au fil de l'eau aux formats XML
+     *         JUnit et JSON (une ligne par resultat).
+     */
+    public boolean isWriteReports() {
+        return writeReports;
+    }
+
+
+    public void setWriteReports(boolean writeReports) {
+        this.writeReports = writeReports;
+    }
+
+
+    /**
+     * @return le port sur lequel les tests release sont distribues a des agents {@link StoryWorker} (0 : execution
+     *         par des runners locaux).
+     */
+    public int getCoordinatorPort() {
+        return coordinatorPort;
+    }
+
+
+    public void setCoordinatorPort(int coordinatorPort) {
+        this.coordinatorPort = Math.max(0, coordinatorPort);
+    }
+
+
+    /**
+     * @return l'adresse d'ecoute du coordinateur : vide pour le seul poste local (boucle locale),
+     *         <code>0.0.0.0</code> pour toutes les interfaces.
+     */
+    public String getCoordinatorAddress() {
+        return coordinatorAddress;
+    }
+
+
+    public void setCoordinatorAddress(String coordinatorAddress) {
+        this.coordinatorAddress = (coordinatorAddress == null ? "" : coordinatorAddress.trim());
+    }
+
+
+    /**
+     * @return <code>true</code> si la configuration lance un ensemble de tests release (cf.
+     *         {@link #getStoryPatterns()}) au lieu d'un fichier ou d'un repertoire.
+     */
+    public boolean isCompound() {
+        return compound;
+    }
+
+
+    public void setCompound(boolean compound) {
+        this.compound = compound;
+    }
+
+
+    /**
+     * @return les tests release, repertoires ou motifs (<code>*</code>, <code>**</code>, <code>?</code>) d'une
+     *         configuration composee, relatifs au repertoire du module.
+     */
+    public List<String> getStoryPatterns() {
+        return storyPatterns;
+    }
+
+
+    public void setStoryPatterns(List<String> storyPatterns) {
+        this.storyPatterns = new ArrayList<String>();
+        for (String pattern : storyPatterns) {
+            if (pattern.trim().length() != 0) {
+                this.storyPatterns.add(pattern.trim());
+            }
+        }
+    }
+
+
+    /**
+     * @return le nombre maximum de runners lances en parallele par une configuration composee, dans la limite
+     *         globale du {@link StoryScheduler}.
+     */
+    public int getParallelRunners() {
+        return parallelRunners;
+    }
+
+
+    public void setParallelRunners(int parallelRunners) {
+        this.parallelRunners = Math.max(1, parallelRunners);
+    }
+
+
+    private String joinStoryPatterns() {
+        StringBuilder patterns = new StringBuilder();
+        for (String pattern : storyPatterns) {
+            if (patterns.length() != 0) {
+                patterns.append(PATTERN_SEPARATOR);
+            }
+            patterns.append(pattern);
+        }
+        return patterns.toString();
+    }
+
+
+    @Nullable
+    StoryWatcher getStoryWatcher() {
+        return storyWatcher;
+    }
+
+
+    void setStoryWatcher(StoryWatcher storyWatcher) {
+        this.storyWatcher = storyWatcher;
+    }
+
+
+    /**
+     * Recopie le parametrage d'execution (module, parametres VM et options) d'une autre configuration.
+     */
+    void copyOptionsFrom(ReleaseTestRunConfiguration configuration) {
+        setTargetModule(configuration.getTargetModule());
+        setVMParameters(configuration.getVMParameters());
+        setAdaptiveVmTuning(configuration.isAdaptiveVmTuning());
+        setRetryCount(configuration.getRetryCount());
+        setProfile(configuration.isProfile());
+        setWriteReports(configuration.isWriteReports());
+    }
 }
@@ -21,17 +21,23 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.Arrays;
 import javax.swing.BorderFactory;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JComponent;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 import org.jetbrains.annotations.NotNull;
 /**
  * Editeur graphique permettant de parametrer un {@link ReleaseTestRunConfiguration}.
@@ -51,6 +57,18 @@ class ReleaseTestRunConfigurationEditor extends SettingsEditor<ReleaseTestRunCon
         resetTextFieldFrom(currentEditor.getFileName(), settings.getReleaseTestFileName());
         resetTextFieldFrom(currentEditor.getVmParameters(), settings.getVMParameters());
         currentEditor.getModules().setSelectedItem(settings.getTargetModule());
+        currentEditor.getAdaptiveVmTuning().setSelected(settings.isAdaptiveVmTuning());
+        currentEditor.getWatchMode().setSelected(settings.isWatchMode());
+        currentEditor.getChangedSinceLastGreen().setSelected(settings.isChangedSinceLastGreen());
+        currentEditor.getRetryCount().setValue(settings.getRetryCount());
+        currentEditor.getProfile().setSelected(settings.isProfile());
+        currentEditor.getWriteReports().setSelected(settings.isWriteReports());
+        currentEditor.getCoordinatorPort().setValue(settings.getCoordinatorPort());
+        resetTextFieldFrom(currentEditor.getCoordinatorAddress(), settings.getCoordinatorAddress());
+        currentEditor.getCompound().setSelected(settings.isCompound());
+        currentEditor.getStoryPatterns().setText(joinLines(settings.getStoryPatterns()));
+        currentEditor.getParallelRunners().setValue(settings.getParallelRunners());
+        currentEditor.updateCompoundFields();
     }
 
 
@@ -59,6 +77,17 @@ class ReleaseTestRunConfigurationEditor extends SettingsEditor<ReleaseTestRunCon
         configuration.setReleaseTestFileName(currentEditor.getFileName().getText());
         configuration.setVMParameters(currentEditor.getVmParameters().getText());
         configuration.setTargetModule(((Module)currentEditor.getModules().getSelectedItem()));
+        configuration.setAdaptiveVmTuning(currentEditor.getAdaptiveVmTuning().isSelected());
+        configuration.setWatchMode(currentEditor.getWatchMode().isSelected());
+        configuration.setChangedSinceLastGreen(currentEditor.getChangedSinceLastGreen().isSelected());
+        configuration.setRetryCount((Integer)currentEditor.getRetryCount().getValue());
+        configuration.setProfile(currentEditor.getProfile().isSelected());
+        configuration.setWriteReports(currentEditor.getWriteReports().isSelected());
+        configuration.setCoordinatorPort((Integer)currentEditor.getCoordinatorPort().getValue());
+        configuration.setCoordinatorAddress(currentEditor.getCoordinatorAddress().getText());
+        configuration.setCompound(currentEditor.getCompound().isSelected());
+        configuration.setStoryPatterns(Arrays.asList(currentEditor.getStoryPatterns().getText().split("\n")));
+        configuration.setParallelRunners((Integer)currentEditor.getParallelRunners().getValue());
     }
 
 
@@ -103,6 +132,15 @@ class ReleaseTestRunConfigurationEditor extends SettingsEditor<ReleaseTestRunCon
     }
 
 
+    private static String joinLines(Iterable<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+
     private void chooseReleaseTestFile() {
         FileChooserDialog fileChooser =
               FileChooserFactory.getInstance().createFileChooser(new FileChooserDescriptor(
@@ -146,6 +184,19 @@ class ReleaseTestRunConfigurationEditor extends SettingsEditor<ReleaseTestRunCon
         private JComboBox modules = new JComboBox(new String[]{"Client", "Test"});
         private JButton chooseFileButton = new JButton("...");
         private JTextField vmParameters = new JTextField();
+        private JCheckBox adaptiveVmTuning = new JCheckBox("Tune heap and GC from previous runs");
+        private JCheckBox watchMode = new JCheckBox("Watch mode: rerun affected stories on save");
+        private JCheckBox changedSinceLastGreen
+              = new JCheckBox("Only stories whose classpath changed since their last green run");
+        private JSpinner retryCount = new JSpinner(new SpinnerNumberModel(0, 0, 10, 1));
+        private JCheckBox profile = new JCheckBox("Profile with Flight Recorder");
+        private JCheckBox writeReports = new JCheckBox("Write JUnit XML and JSON reports");
+        private JSpinner coordinatorPort = new JSpinner(new SpinnerNumberModel(0, 0, 65535, 1));
+        private JTextField coordinatorAddress = new JTextField(15);
+        private JCheckBox compound = new JCheckBox("Run a set of stories");
+        private JTextArea storyPatterns = new JTextArea(4, 40);
+        private JSpinner parallelRunners = new JSpinner(new SpinnerNumberModel(
+              ReleaseTestRunConfiguration.DEFAULT_PARALLEL_RUNNERS, 1, 32, 1));
 
 
         MyEditor() {
@@ -170,11 +221,74 @@ class ReleaseTestRunConfigurationEditor extends SettingsEditor<ReleaseTestRunCon
             add(vmParameters, newConstraints(0, 4));
 
             add(newLabelFor(modules, 'o', "Use classpath and JDK of module:"), newConstraints(0, 5, 10));
-            constraints = newConstraints(0, 6);
+            add(modules, newConstraints(0, 6));
+
+            adaptiveVmTuning.setMnemonic('T');
+            add(adaptiveVmTuning, newConstraints(0, 7, 10));
+
+            watchMode.setMnemonic('W');
+            add(watchMode, newConstraints(0, 8));
+
+            changedSinceLastGreen.setMnemonic('C');
+            add(changedSinceLastGreen, newConstraints(0, 9));
+
+            add(newLabelFor(retryCount, 'R', "Retries of failed stories:"), newConstraints(0, 10, 10));
+            constraints = newConstraints(0, 11);
+            constraints.fill = GridBagConstraints.NONE;
+            constraints.anchor = GridBagConstraints.WEST;
+            add(retryCount, constraints);
+
+            profile.setMnemonic('P');
+            add(profile, newConstraints(0, 12, 10));
+
+            writeReports.setMnemonic('J');
+            add(writeReports, newConstraints(0, 13));
+
+            add(newLabelFor(coordinatorPort, 'D', "Distribute to worker agents on port (0 = local runners):"),
+                newConstraints(0, 14, 10));
+            constraints = newConstraints(0, 15);
+            constraints.fill = GridBagConstraints.NONE;
+            constraints.anchor = GridBagConstraints.WEST;
+            add(coordinatorPort, constraints);
+
+            add(newLabelFor(coordinatorAddress, 'A',
+                            "Listen on address (empty = this machine only, 0.0.0.0 = all interfaces):"),
+                newConstraints(0, 16));
+            constraints = newConstraints(0, 17);
+            constraints.fill = GridBagConstraints.NONE;
+            constraints.anchor = GridBagConstraints.WEST;
+            add(coordinatorAddress, constraints);
+
+            compound.setMnemonic('S');
+            compound.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent evt) {
+                    updateCompoundFields();
+                }
+            });
+            add(compound, newConstraints(0, 18, 10));
+            add(newLabelFor(storyPatterns, 'g',
+                            "Stories, directories or glob patterns, one per line (relative to the module):"),
+                newConstraints(0, 19));
+            add(new JScrollPane(storyPatterns), newConstraints(0, 20));
+
+            add(newLabelFor(parallelRunners, 'l', "Parallel runners:"), newConstraints(0, 21));
+            constraints = newConstraints(0, 22);
+            constraints.fill = GridBagConstraints.NONE;
             constraints.weighty = 1.0;
             constraints.weightx = 1.0;
-            constraints.anchor = GridBagConstraints.NORTH;
-            add(modules, constraints);
+            constraints.anchor = GridBagConstraints.NORTHWEST;
+            add(parallelRunners, constraints);
+            updateCompoundFields();
+        }
+
+
+        void updateCompoundFields() {
+            boolean isCompound = compound.isSelected();
+            fileName.setEnabled(!isCompound);
+            chooseFileButton.setEnabled(!isCompound);
+            watchMode.setEnabled(!isCompound);
+            storyPatterns.setEnabled(isCompound);
+            parallelRunners.setEnabled(isCompound);
         }
 
 
@@ -193,6 +307,61 @@ class ReleaseTestRunConfigurationEditor extends SettingsEditor<ReleaseTestRunCon
         }
 
 
+        public JCheckBox getAdaptiveVmTuning() {
+            return adaptiveVmTuning;
+        }
+
+
+        public JCheckBox getWatchMode() {
+            return watchMode;
+        }
+
+
+        public JCheckBox getChangedSinceLastGreen() {
+            return changedSinceLastGreen;
+        }
+
+
+        public JSpinner getRetryCount() {
+            return retryCount;
+        }
+
+
+        public JCheckBox getProfile() {
+            return profile;
+        }
+
+
+        public JCheckBox getWriteReports() {
+            return writeReports;
+        }
+
+
+        public JSpinner getCoordinatorPort() {
+            return coordinatorPort;
+        }
+
+
+        public JTextField getCoordinatorAddress() {
+            return coordinatorAddress;
+        }
+
+
+        public JCheckBox getCompound() {
+            return compound;
+        }
+
+
+        public JTextArea getStoryPatterns() {
+            return storyPatterns;
+        }
+
+
+        public JSpinner getParallelRunners() {
+            return parallelRunners;
+        }
+
+
         public JButton getChooseFileButton() {
             return chooseFileButton;
         }
@@ -11,6 +11,7 @@ import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.IconLoader;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
@@ -18,13 +19,14 @@ import javax.swing.Icon;
 import org.jetbrains.annotations.NotNull;
 
 public class ReleaseTestRunConfigurationType implements LocatableConfigurationType {
-    private final FileFormatRecognizer recognizer = new FileFormatRecognizer();
     private final ReleaseTestConfigurationFactory factory;
+    private final ReleaseTestSuiteConfigurationFactory suiteFactory;
     private Icon icon;
 
 
     public ReleaseTestRunConfigurationType() {
         factory = new ReleaseTestConfigurationFactory(this);
+        suiteFactory = new ReleaseTestSuiteConfigurationFactory(this);
     }
 
 
@@ -53,7 +55,7 @@ public class ReleaseTestRunConfigurationType implements LocatableConfigurationTy
 
 
     public ConfigurationFactory[] getConfigurationFactories() {
-        return new ConfigurationFactory[]{factory};
+        return new ConfigurationFactory[]{factory, suiteFactory};
     }
 
 
@@ -66,11 +68,11 @@ public class ReleaseTestRunConfigurationType implements LocatableConfigurationTy
         else {
             currentFile = location.getOpenFileDescriptor().getFile();
         }
-        if (!recognizer.isReleaseTestFile(currentFile.getPath())) {
+        Project project = location.getProject();
+        if (!StoryIndexService.createStoryFinder(project).containsStories(new File(currentFile.getPath()))) {
             return null;
         }
 
-        Project project = location.getProject();
         RunnerAndConfigurationSettings settings = buildSettings(RunManager.getInstance(project), currentFile);
 
         ReleaseTestRunConfiguration configuration = (ReleaseTestRunConfiguration)settings.getConfiguration();
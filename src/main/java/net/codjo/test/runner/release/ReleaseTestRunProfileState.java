@@ -1,15 +1,47 @@
 package net.codjo.test.runner.release;
 import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.CommandLineBuilder;
+import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.configurations.JavaCommandLineState;
 import com.intellij.execution.configurations.JavaParameters;
+import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.execution.process.ProcessTerminatedListener;
 import com.intellij.execution.runners.ExecutionEnvironment;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.projectRoots.Sdk;
 import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.util.PathUtil;
 import com.intellij.util.PathsList;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ReleaseTestRunProfileState extends JavaCommandLineState {
     private static final String RUNNER_CLASS = "net.codjo.test.release.ReleaseTestRunner";
     private static final String RUNNER_CLASS_LEGACY = "com.agf.test.release.ReleaseTestRunner";
+    static final String WORK_DIRECTORY = "target/release-test-runner";
+    private static final String TELEMETRY_FILE = "telemetry.properties";
+    private static final String FINGERPRINT_FILE = "fingerprints.properties";
+    private static final String HISTORY_FILE = "history.properties";
+    private static final String GC_LOG_DIRECTORY = "gc";
+    private static final String RECORDING_DIRECTORY = "jfr";
+    private static final String REPORT_DIRECTORY = "reports";
+    private static final int MAX_DISTRIBUTED_STORIES = 256;
+    private final Logger logger = Logger.getInstance(ReleaseTestRunProfileState.class.getName());
+    private final Map<String, JvmOptionTuner.Tuning> tunings = new ConcurrentHashMap<String, JvmOptionTuner.Tuning>();
 
 
     protected ReleaseTestRunProfileState(ExecutionEnvironment executionEnvironment) {
@@ -19,6 +51,17 @@ public class ReleaseTestRunProfileState extends JavaCommandLineState {
 
     @Override
     protected JavaParameters createJavaParameters() throws ExecutionException {
+        return createJavaParameters(getConfig().getReleaseTestFileName(), true);
+    }
+
+
+    /**
+     * @param storyOptions ajoute les options propres au test release (reglage de la JVM, journal du GC,
+     *                     enregistrement JFR) ; sans objet pour une ligne de commande partagee par plusieurs tests
+     *                     release.
+     */
+    private JavaParameters createJavaParameters(String releaseTestFileName, boolean storyOptions)
+          throws ExecutionException {
         JavaParameters javaParameters = new JavaParameters();
 
         javaParameters.setJdk(determineProjectJDK());
@@ -34,16 +77,454 @@ public class ReleaseTestRunProfileState extends JavaCommandLineState {
         javaParameters.getVMParametersList()
               .add("-Dlog4j.configuration=file:///" + userHome + "/log4j.properties");
 
+        if (storyOptions && getConfig().isAdaptiveVmTuning()) {
+            tuneVmParameters(javaParameters, releaseTestFileName);
+        }
+
+        if (storyOptions && getConfig().isProfile()) {
+            File recording = getRecording(releaseTestFileName);
+            recording.getParentFile().mkdirs();
+            recording.delete();
+            javaParameters.getVMParametersList()
+                  .add("-XX:StartFlightRecording=dumponexit=true,settings=profile,filename="
+                       + recording.getAbsolutePath());
+        }
+
         if (getConfig().getVMParameters() != null && !"".equals(getConfig().getVMParameters().trim())) {
             javaParameters.getVMParametersList().addAll(getConfig().getVmParameterAsArray());
         }
 
-        javaParameters.getProgramParametersList().add(getConfig().getReleaseTestFileName());
+        javaParameters.getProgramParametersList().add(releaseTestFileName);
 
         return javaParameters;
     }
 
 
+    @Override
+    protected OSProcessHandler startProcess() throws ExecutionException {
+        if (getConfig().isCompound() || getConfig().isChangedSinceLastGreen() || getConfig().getRetryCount() > 0
+            || getConfig().isWriteReports() || getConfig().getCoordinatorPort() > 0) {
+            return startStoryBatch();
+        }
+
+        return startScheduledProcess();
+    }
+
+
+    /**
+     * Lance le runner d'un test release seul, ou d'un repertoire, sous la forme d'un lot d'un seul element : le
+     * runner attend ainsi sa place du {@link StoryScheduler} dans le thread du lot, sans bloquer l'appelant.
+     */
+    private OSProcessHandler startScheduledProcess() throws ExecutionException {
+        final GeneralCommandLine commandLine = CommandLineBuilder.createFromJavaParameters(getJavaParameters());
+        final String story = getConfig().getReleaseTestFileName();
+        StoryProcessFactory processFactory = new StoryProcessFactory() {
+            public Process start(File scope) throws IOException {
+                return createProcess(commandLine);
+            }
+        };
+        final StoryBatchProcess process =
+              new StoryBatchProcess(Collections.singletonList(new File(story)), processFactory);
+        OSProcessHandler processHandler = new OSProcessHandler(process, commandLine.getCommandLineString());
+        ProcessTerminatedListener.attach(processHandler);
+        processHandler.addProcessListener(new ProcessAdapter() {
+            @Override
+            public void startNotified(ProcessEvent event) {
+                process.start();
+            }
+        });
+        registerToStoryWatcher(processHandler);
+        if (tunings.containsKey(story)) {
+            process.addStoryListener(new TelemetryRecorder(processHandler, story));
+        }
+        if (getConfig().isProfile()) {
+            processHandler.addProcessListener(new ProcessAdapter() {
+                @Override
+                public void processTerminated(ProcessEvent event) {
+                    printProfile(event.getProcessHandler(), story);
+                }
+            });
+        }
+        return processHandler;
+    }
+
+
+    private static Process createProcess(GeneralCommandLine commandLine) throws IOException {
+        try {
+            return commandLine.createProcess();
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+
+    private OSProcessHandler startStoryBatch() throws ExecutionException {
+        List<File> stories;
+        String scope;
+        if (getConfig().isCompound()) {
+            scope = determineModuleDirectory();
+            stories = new StoryPatternResolver(StoryIndexService.createStoryFinder(getConfig().getProject()))
+                  .resolve(new File(scope), getConfig().getStoryPatterns());
+        }
+        else {
+            scope = getConfig().getReleaseTestFileName();
+            stories = StoryIndexService.createStoryFinder(getConfig().getProject()).findStories(new File(scope));
+        }
+        String report = "";
+        GreenRecorder greenRecorder = null;
+
+        if (getConfig().isChangedSinceLastGreen()) {
+            List<String> classPath = createJavaParameters(scope, false).getClassPath().getPathList();
+            Map<String, String> fingerprints;
+            StoryFingerprintStore fingerprintStore;
+            try {
+                fingerprintStore = new StoryFingerprintStore(new File(getWorkDirectory(), FINGERPRINT_FILE));
+                Sdk sdk = determineProjectJDK();
+                File sdkHome = (sdk == null || sdk.getHomePath() == null ? null : new File(sdk.getHomePath()));
+                fingerprints = new ClasspathFingerprinter(fingerprintStore, sdkHome).fingerprint(classPath);
+                fingerprintStore.save();
+            }
+            catch (IOException e) {
+                throw new ExecutionException("Impossible de calculer les empreintes du classpath : " + e.getMessage());
+            }
+            Map<File, List<String>> selection =
+                  new ClasspathImpactAnalyzer(fingerprintStore).selectChangedSinceLastGreen(stories, fingerprints);
+            report = ClasspathImpactAnalyzer.toReport(selection, stories.size());
+            stories = new ArrayList<File>(selection.keySet());
+            greenRecorder = new GreenRecorder(fingerprintStore, fingerprints);
+        }
+
+        StoryBatchProcess process;
+        StoryCoordinator coordinator = null;
+        PipelinedStoryLauncher launcher = null;
+        if (getConfig().getCoordinatorPort() > 0) {
+            coordinator = createCoordinator(scope);
+            report += "\nWaiting for workers on port " + coordinator.getPort() + ", start them with:\n  java -cp "
+                      + PathUtil.getJarPathForClass(StoryWorker.class) + " " + StoryWorker.class.getName() + " "
+                      + getHostName(coordinator.getBindAddress()) + " " + coordinator.getPort() + " "
+                      + coordinator.getToken() + "\n"
+                      + (coordinator.getBindAddress().isLoopbackAddress()
+                         ? "Listening on this machine only: set the coordinator address (0.0.0.0 for all"
+                           + " interfaces) to accept workers from other machines.\n"
+                         : "")
+                      + "With several workers, the output of each remote story is shown once it has finished.\n";
+            if (getConfig().isAdaptiveVmTuning() || getConfig().isProfile()) {
+                report += "Adaptive VM tuning and profiling are not applied to remote runners.\n";
+            }
+            process = new StoryBatchProcess(stories, coordinator);
+            // Les runners distants n'occupent pas le poste : un thread par agent connecte suffit.
+            process.setScheduler(new StoryScheduler(MAX_DISTRIBUTED_STORIES));
+            final StoryBatchProcess distributedProcess = process;
+            coordinator.setWorkerCountListener(new StoryCoordinator.WorkerCountListener() {
+                public void workerCountChanged(int workerCount) {
+                    distributedProcess.setParallelism(Math.min(workerCount, MAX_DISTRIBUTED_STORIES));
+                }
+            });
+        }
+        else {
+            launcher = createLauncher(stories);
+            process = new StoryBatchProcess(stories, launcher);
+            process.addStoryListener(launcher);
+            if (getConfig().isCompound()) {
+                int parallelism = Math.min(getConfig().getParallelRunners(),
+                                           StoryScheduler.getInstance().getMaxRunners());
+                process.setParallelism(parallelism);
+                launcher.setIdleRunnerEnabled(parallelism == 1);
+            }
+            launcher.open();
+        }
+        if (greenRecorder != null) {
+            process.addStoryListener(greenRecorder);
+        }
+        OSProcessHandler processHandler = startStoryBatch(process, stories.size(), report);
+        if (coordinator != null) {
+            final StoryCoordinator coordinatorToClose = coordinator;
+            processHandler.addProcessListener(new ProcessAdapter() {
+                @Override
+                public void processTerminated(ProcessEvent event) {
+                    coordinatorToClose.close();
+                }
+            });
+        }
+        if (launcher != null) {
+            final PipelinedStoryLauncher launcherToClose = launcher;
+            processHandler.addProcessListener(new ProcessAdapter() {
+                @Override
+                public void processTerminated(ProcessEvent event) {
+                    launcherToClose.close();
+                }
+            });
+        }
+        if (getConfig().isWriteReports()) {
+            addResultWriters(process, processHandler);
+        }
+
+        if (getConfig().getRetryCount() > 0) {
+            process.setMaxRetries(getConfig().getRetryCount());
+            final RetryReporter retryReporter;
+            try {
+                retryReporter = new RetryReporter(new StoryHistoryStore(new File(getWorkDirectory(), HISTORY_FILE)));
+            }
+            catch (IOException e) {
+                throw new ExecutionException("Impossible de lire l'historique des tests release : " + e.getMessage());
+            }
+            process.addStoryListener(retryReporter);
+            processHandler.addProcessListener(new ProcessAdapter() {
+                @Override
+                public void processTerminated(ProcessEvent event) {
+                    event.getProcessHandler().notifyTextAvailable(retryReporter.toReport(), ProcessOutputTypes.SYSTEM);
+                }
+            });
+        }
+        return processHandler;
+    }
+
+
+    private PipelinedStoryLauncher createLauncher(List<File> stories) {
+        return new PipelinedStoryLauncher(stories, new File(determineModuleDirectory()),
+                                          new PipelinedStoryLauncher.CommandFactory() {
+                                              public List<String> createCommand(File story) throws IOException {
+                                                  return createLauncherCommand(story);
+                                              }
+                                          });
+    }
+
+
+    /**
+     * @return la ligne de commande d'un runner {@link StoryLauncher} attendant le chemin du test release. Appelee
+     *         hors du thread de l'IHM, d'ou la lecture du modele du projet dans une 'read action'.
+     */
+    private List<String> createLauncherCommand(final File story) throws IOException {
+        final ExecutionException[] failure = new ExecutionException[1];
+        List<String> command = ApplicationManager.getApplication().runReadAction(new Computable<List<String>>() {
+            public List<String> compute() {
+                try {
+                    JavaParameters javaParameters = createJavaParameters(story.getPath(), true);
+                    String runnerClass = javaParameters.getMainClass();
+                    javaParameters.setMainClass(StoryLauncher.class.getName());
+                    javaParameters.getClassPath().add(PathUtil.getJarPathForClass(StoryLauncher.class));
+                    javaParameters.getProgramParametersList().clearAll();
+                    javaParameters.getProgramParametersList().add(runnerClass);
+                    return CommandLineBuilder.createFromJavaParameters(javaParameters).getCommands();
+                }
+                catch (ExecutionException e) {
+                    failure[0] = e;
+                    return null;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw new IOException(failure[0].getMessage());
+        }
+        return command;
+    }
+
+
+    /**
+     * Cree le coordinateur, a l'ecoute sur l'adresse de la configuration (la boucle locale si elle est vide).
+     */
+    private StoryCoordinator createCoordinator(String scope) throws ExecutionException {
+        GeneralCommandLine commandLine =
+              CommandLineBuilder.createFromJavaParameters(createJavaParameters(scope, false));
+        List<String> runnerCommand = new ArrayList<String>(commandLine.getCommands());
+        runnerCommand.remove(runnerCommand.size() - 1);
+        try {
+            String address = getConfig().getCoordinatorAddress();
+            InetAddress bindAddress = InetAddress.getByName(address.length() == 0 ? null : address);
+            StoryCoordinator coordinator = new StoryCoordinator(bindAddress, getConfig().getCoordinatorPort(),
+                                                                runnerCommand, determineModuleDirectory());
+            coordinator.open();
+            return coordinator;
+        }
+        catch (IOException e) {
+            throw new ExecutionException("Impossible d'ouvrir le port " + getConfig().getCoordinatorPort() + " : "
+                                         + e.getMessage());
+        }
+    }
+
+
+    private static String getHostName(InetAddress bindAddress) {
+        if (!bindAddress.isAnyLocalAddress()) {
+            return bindAddress.getHostAddress();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (IOException e) {
+            return "localhost";
+        }
+    }
+
+
+    private OSProcessHandler startStoryBatch(final StoryBatchProcess process, int storyCount, final String report) {
+        final OSProcessHandler processHandler = new OSProcessHandler(process, getConfig().getName());
+        StoryConsoleReporter consoleReporter = new StoryConsoleReporter(processHandler, storyCount);
+        process.addStoryListener(consoleReporter);
+        processHandler.addProcessListener(consoleReporter);
+        processHandler.addProcessListener(new ProcessAdapter() {
+            @Override
+            public void startNotified(ProcessEvent event) {
+                processHandler.notifyTextAvailable(report, ProcessOutputTypes.SYSTEM);
+                process.start();
+            }
+        });
+        registerToStoryWatcher(processHandler);
+        return processHandler;
+    }
+
+
+    private void addResultWriters(StoryBatchProcess process, OSProcessHandler processHandler)
+          throws ExecutionException {
+        String reportName = getConfig().getName().replaceAll("[^\\w.-]", "_");
+        final File xmlReport = new File(new File(getWorkDirectory(), REPORT_DIRECTORY), reportName + ".xml");
+        final File jsonReport = new File(new File(getWorkDirectory(), REPORT_DIRECTORY), reportName + ".ndjson");
+        final JUnitXmlResultWriter xmlWriter;
+        final JsonLinesResultWriter jsonWriter;
+        try {
+            xmlWriter = new JUnitXmlResultWriter(xmlReport, getConfig().getName(),
+                                                 new File(determineModuleDirectory()));
+            jsonWriter = new JsonLinesResultWriter(jsonReport);
+        }
+        catch (IOException e) {
+            throw new ExecutionException("Impossible de creer les rapports de resultats : " + e.getMessage());
+        }
+        process.addStoryListener(xmlWriter);
+        process.addStoryListener(jsonWriter);
+        processHandler.addProcessListener(new ProcessAdapter() {
+            @Override
+            public void processTerminated(ProcessEvent event) {
+                try {
+                    xmlWriter.close();
+                    jsonWriter.close();
+                }
+                catch (IOException e) {
+                    logger.warn("Impossible de fermer les rapports de resultats", e);
+                }
+                event.getProcessHandler().notifyTextAvailable("\nReports: " + xmlReport + "\n         " + jsonReport
+                                                              + "\n", ProcessOutputTypes.SYSTEM);
+            }
+        });
+    }
+
+
+    private void registerToStoryWatcher(OSProcessHandler processHandler) {
+        StoryWatcher storyWatcher = getConfig().getStoryWatcher();
+        if (storyWatcher != null) {
+            storyWatcher.storyStarted(getConfig().getReleaseTestFileName(), processHandler);
+        }
+    }
+
+
+    private void tuneVmParameters(JavaParameters javaParameters, String story) {
+        StoryTelemetry telemetry = null;
+        try {
+            telemetry = loadTelemetryStore().get(toStoryKey(story));
+        }
+        catch (IOException e) {
+            logger.warn("Impossible de lire les mesures des executions precedentes", e);
+        }
+
+        JvmOptionTuner.Tuning tuning = new JvmOptionTuner().tune(telemetry, getConfig().getVmParameterAsArray());
+        tunings.put(story, tuning);
+        javaParameters.getVMParametersList().addAll(tuning.getOptions().toArray(new String[0]));
+
+        File gcLog = getGcLog(story);
+        gcLog.getParentFile().mkdirs();
+        gcLog.delete();
+        if (tuning.isGcLogEnabled()) {
+            javaParameters.getVMParametersList().add("-Xloggc:" + gcLog.getAbsolutePath());
+        }
+    }
+
+
+    private synchronized void recordTelemetry(String story, long wallClockMillis) {
+        try {
+            StoryTelemetry telemetry = new GcLogParser().parse(getGcLog(story), wallClockMillis);
+            if (telemetry == null) {
+                return;
+            }
+            StoryTelemetryStore store = loadTelemetryStore();
+            store.put(toStoryKey(story), telemetry);
+            store.save();
+        }
+        catch (IOException e) {
+            logger.warn("Impossible d'enregistrer les mesures de l'execution", e);
+        }
+    }
+
+
+    /**
+     * Affiche le resume de l'enregistrement JFR d'un test release. L'analyse (outil <code>jfr</code>) est faite
+     * en tache de fond pour ne pas bloquer les notifications de fin de processus.
+     */
+    private void printProfile(final ProcessHandler processHandler, final String story) {
+        final Sdk sdk = determineProjectJDK();
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            public void run() {
+                printProfile(processHandler, story, sdk);
+            }
+        });
+    }
+
+
+    private void printProfile(ProcessHandler processHandler, String story, Sdk sdk) {
+        if (sdk == null || sdk.getHomePath() == null) {
+            processHandler.notifyTextAvailable("\nNo profile: no project JDK to read the recording\n",
+                                               ProcessOutputTypes.SYSTEM);
+            return;
+        }
+        File recording = getRecording(story);
+        File jfrTool = new File(sdk.getHomePath(), "bin/" + (SystemInfo.isWindows ? "jfr.exe" : "jfr"));
+        if (!recording.isFile() || !jfrTool.isFile()) {
+            processHandler.notifyTextAvailable("\nNo profile: " + (recording.isFile() ? jfrTool : recording)
+                                               + " not found\n", ProcessOutputTypes.SYSTEM);
+            return;
+        }
+        try {
+            FlightRecordingAnalyzer analyzer = new FlightRecordingAnalyzer();
+            analyzer.analyze(jfrTool, recording);
+            processHandler.notifyTextAvailable(analyzer.toReport(new File(story).getName())
+                                               + "Recording: " + recording + "\n", ProcessOutputTypes.SYSTEM);
+        }
+        catch (IOException e) {
+            logger.warn("Impossible d'analyser l'enregistrement " + recording, e);
+        }
+    }
+
+
+    private StoryTelemetryStore loadTelemetryStore() throws IOException {
+        return new StoryTelemetryStore(new File(getWorkDirectory(), TELEMETRY_FILE));
+    }
+
+
+    private File getGcLog(String story) {
+        return getStoryFile(GC_LOG_DIRECTORY, story, ".log");
+    }
+
+
+    private File getRecording(String story) {
+        return getStoryFile(RECORDING_DIRECTORY, story, ".jfr");
+    }
+
+
+    private File getStoryFile(String directory, String story, String extension) {
+        return new File(new File(getWorkDirectory(), directory),
+                        new File(story).getName() + "-" + Integer.toHexString(toStoryKey(story).hashCode())
+                        + extension);
+    }
+
+
+    private static String toStoryKey(String story) {
+        return new File(story).getAbsolutePath();
+    }
+
+
+    private File getWorkDirectory() {
+        return new File(determineModuleDirectory(), WORK_DIRECTORY);
+    }
+
+
     private String determineModuleDirectory() {
         //noinspection ConstantConditions
         return getConfig().getTargetModule().getModuleFile().getParent().getPath();
@@ -58,4 +539,125 @@ public class ReleaseTestRunProfileState extends JavaCommandLineState {
     private ReleaseTestRunConfiguration getConfig() {
         return (ReleaseTestRunConfiguration)getRunnerSettings().getRunProfile();
     }
+
+
+    /**
+     * Affiche le reglage retenu au demarrage du test et enregistre les mesures du GC a la fin.
+     */
+    private class TelemetryRecorder implements StoryListener {
+        private final ProcessHandler processHandler;
+        private final String story;
+
+
+        TelemetryRecorder(ProcessHandler processHandler, String story) {
+            this.processHandler = processHandler;
+            this.story = story;
+        }
+
+
+        public void storyStarted(File storyFile) {
+            processHandler.notifyTextAvailable(tunings.get(story).toReport(story), ProcessOutputTypes.SYSTEM);
+        }
+
+
+        public void storyFinished(StoryResult result) {
+            recordTelemetry(story, result.getDurationMillis());
+        }
+    }
+
+    /**
+     * Trace le debut et la fin de chaque test release d'un lot dans la console, avec l'avancement du lot, puis le
+     * bilan du lot a sa fin. Les tests release d'un lot pouvant tourner en parallele, les appels sont synchronises.
+     */
+    private class StoryConsoleReporter extends ProcessAdapter implements StoryListener {
+        private final OSProcessHandler processHandler;
+        private final int storyCount;
+        private final Map<File, StoryResult> lastResults = new LinkedHashMap<File, StoryResult>();
+
+
+        StoryConsoleReporter(OSProcessHandler processHandler, int storyCount) {
+            this.processHandler = processHandler;
+            this.storyCount = storyCount;
+        }
+
+
+        public synchronized void storyStarted(File story) {
+            processHandler.notifyTextAvailable("\n=== " + story.getName() + " ===\n", ProcessOutputTypes.SYSTEM);
+            JvmOptionTuner.Tuning tuning = tunings.get(story.getPath());
+            if (tuning != null) {
+                processHandler.notifyTextAvailable(tuning.toReport(story.getPath()), ProcessOutputTypes.SYSTEM);
+            }
+        }
+
+
+        public synchronized void storyFinished(StoryResult result) {
+            lastResults.put(result.getStory(), result);
+            processHandler.notifyTextAvailable("=== " + result.getStory().getName()
+                                               + (result.isSuccess() ? " OK" : " FAILED")
+                                               + (result.isRetry() ? " on retry " + result.getAttempt() : "")
+                                               + " (" + result.getDurationMillis() + " ms) ["
+                                               + lastResults.size() + "/" + storyCount + "] ===\n",
+                                               ProcessOutputTypes.SYSTEM);
+            if (tunings.containsKey(result.getStory().getPath())) {
+                recordTelemetry(result.getStory().getPath(), result.getDurationMillis());
+            }
+            if (getConfig().isProfile() && getConfig().getCoordinatorPort() == 0) {
+                printProfile(processHandler, result.getStory().getPath());
+            }
+        }
+
+
+        @Override
+        public synchronized void processTerminated(ProcessEvent event) {
+            List<String> failedStories = new ArrayList<String>();
+            long totalMillis = 0;
+            for (StoryResult result : lastResults.values()) {
+                totalMillis += result.getDurationMillis();
+                if (!result.isSuccess()) {
+                    failedStories.add(result.getStory().getPath());
+                }
+            }
+            StringBuilder summary = new StringBuilder("\nSummary: ")
+                  .append(lastResults.size() - failedStories.size()).append(" passed, ")
+                  .append(failedStories.size()).append(" failed, ")
+                  .append(storyCount - lastResults.size()).append(" not run (")
+                  .append(totalMillis).append(" ms of runner time)\n");
+            for (String failedStory : failedStories) {
+                summary.append("  FAILED ").append(failedStory).append('\n');
+            }
+            processHandler.notifyTextAvailable(summary.toString(), ProcessOutputTypes.SYSTEM);
+        }
+    }
+
+    /**
+     * Memorise les empreintes du classpath des tests release passes au vert.
+     */
+    private class GreenRecorder implements StoryListener {
+        private final StoryFingerprintStore store;
+        private final Map<String, String> fingerprints;
+
+
+        GreenRecorder(StoryFingerprintStore store, Map<String, String> fingerprints) {
+            this.store = store;
+            this.fingerprints = fingerprints;
+        }
+
+
+        public void storyStarted(File story) {
+        }
+
+
+        public synchronized void storyFinished(StoryResult result) {
+            if (!result.isSuccess()) {
+                return;
+            }
+            store.recordGreen(result.getStory().getAbsolutePath(), fingerprints);
+            try {
+                store.save();
+            }
+            catch (IOException e) {
+                logger.warn("Impossible d'enregistrer les empreintes du classpath", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,25 @@
+package net.codjo.test.runner.release;
+import com.intellij.execution.configurations.RunConfiguration;
+import com.intellij.openapi.project.Project;
+/**
+ * Fabrique des configurations composees : un ensemble de tests release d'un module execute en un seul lancement.
+ */
+public class ReleaseTestSuiteConfigurationFactory extends ReleaseTestConfigurationFactory {
+    public ReleaseTestSuiteConfigurationFactory(ReleaseTestRunConfigurationType releaseTestRunConfigurationType) {
+        super(releaseTestRunConfigurationType);
+    }
+
+
+    @Override
+    public String getName() {
+        return "Release Test Suite";
+    }
+
+
+    @Override
+    public RunConfiguration createTemplateConfiguration(Project project) {
+        ReleaseTestRunConfiguration configuration = new ReleaseTestRunConfiguration(this, project, "Une Suite");
+        configuration.setCompound(true);
+        return configuration;
+    }
+}
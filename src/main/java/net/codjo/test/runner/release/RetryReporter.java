@@ -0,0 +1,89 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+/**
+ * Alimente l'historique {@link StoryHistoryStore} et resume les relances d'un {@link StoryBatchProcess}.
+ *
+ * <p> Le resume classe chaque test release d'apres les tentatives de ce lancement : reste en echec a toutes ses
+ * tentatives, c'est une regression ; passe apres relance, il est instable. L'historique, tel qu'il etait avant ce
+ * lancement, precise seulement si cette instabilite etait deja connue. </p>
+ */
+class RetryReporter implements StoryListener {
+    private final Logger logger = Logger.getInstance(RetryReporter.class.getName());
+    private final StoryHistoryStore historyStore;
+    private final Map<File, StoryResult> lastResults = new LinkedHashMap<File, StoryResult>();
+    private final Map<File, String> previousHistories = new HashMap<File, String>();
+
+
+    RetryReporter(StoryHistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+
+
+    public void storyStarted(File story) {
+    }
+
+
+    public synchronized void storyFinished(StoryResult result) {
+        lastResults.put(result.getStory(), result);
+        if (!previousHistories.containsKey(result.getStory())) {
+            previousHistories.put(result.getStory(), historyStore.getHistory(result.getStory().getAbsolutePath()));
+        }
+        historyStore.record(result.getStory().getAbsolutePath(), result.isSuccess());
+        try {
+            historyStore.save();
+        }
+        catch (IOException e) {
+            logger.warn("Impossible d'enregistrer l'historique des tests release", e);
+        }
+    }
+
+
+    public synchronized String toReport() {
+        StringBuilder knownFlaky = new StringBuilder();
+        StringBuilder passedOnRetry = new StringBuilder();
+        StringBuilder regressions = new StringBuilder();
+        int passedFirstTime = 0;
+
+        for (StoryResult result : lastResults.values()) {
+            String story = result.getStory().getAbsolutePath();
+            String line = "  " + result.getStory().getName() + " (" + (result.getAttempt() + 1)
+                          + " attempt(s), history " + historyStore.getHistory(story) + ")\n";
+            if (result.isSuccess() && !result.isRetry()) {
+                passedFirstTime++;
+            }
+            else if (result.isSuccess() && StoryHistoryStore.isFlakyHistory(previousHistories.get(result.getStory()))) {
+                knownFlaky.append(line);
+            }
+            else if (result.isSuccess()) {
+                passedOnRetry.append(line);
+            }
+            else {
+                regressions.append(line);
+            }
+        }
+
+        StringBuilder report = new StringBuilder("\nRetry summary: ").append(lastResults.size())
+              .append(" stories, ").append(passedFirstTime).append(" passed at first attempt\n");
+        appendSection(report, "Passed on retry, known as flaky:", knownFlaky);
+        appendSection(report, "Passed on retry (flaky):", passedOnRetry);
+        appendSection(report, "Failed (regressions):", regressions);
+        return report.toString();
+    }
+
+
+    private static void appendSection(StringBuilder report, String title, StringBuilder lines) {
+        if (lines.length() != 0) {
+            report.append(title).append('\n').append(lines);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+/**
+ * Processus 'virtuel' executant une liste de tests release, chacun dans son propre runner.
+ *
+ * <p> Les sorties des runners sont regroupees dans {@link #getInputStream()} et {@link #getErrorStream()}, ce qui
+ * permet de presenter le lot dans une seule console IDEA (cf. {@link com.intellij.execution.process.OSProcessHandler}).
+ * Le code retour vaut 0 si tous les tests release sont passes, 1 sinon. </p>
+ *
+ * <p> Les tests release en echec peuvent etre relances (cf. {@link #setMaxRetries(int)}) une fois le lot termine,
+ * chacun dans un nouveau runner. </p>
+ *
+ * <p> Plusieurs runners peuvent tourner en parallele (cf. {@link #setParallelism(int)}) : la sortie de chaque test
+ * release est alors bufferisee puis ecrite d'un bloc a sa fin, et les listeners sont appeles depuis plusieurs threads.
+ * Chaque runner doit obtenir une place aupres du {@link StoryScheduler}, ce qui borne le nombre de runners du poste
+ * quel que soit le nombre de lots lances ; un runner pre-demarre (cf. {@link PreStartedProcessFactory}) apporte la
+ * sienne. </p>
+ */
+class StoryBatchProcess extends Process {
+    static final int EXCERPT_SIZE = 4096;
+    private final List<File> stories;
+    private final StoryProcessFactory processFactory;
+    private final List<StoryListener> listeners = new CopyOnWriteArrayList<StoryListener>();
+    private final OutputPipe output = new OutputPipe();
+    private final OutputPipe error = new OutputPipe();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean destroyed;
+    private volatile boolean crashed;
+    private volatile int exitValue;
+    private final Set<Process> runningProcesses = new HashSet<Process>();
+    private int maxRetries;
+    private volatile int parallelism = 1;
+    private ThreadPoolExecutor executor;
+    private int executorSize;
+    private StoryScheduler scheduler = StoryScheduler.getInstance();
+
+
+    StoryBatchProcess(List<File> stories, StoryProcessFactory processFactory) {
+        this.stories = new ArrayList<File>(stories);
+        this.processFactory = processFactory;
+    }
+
+
+    public void addStoryListener(StoryListener listener) {
+        listeners.add(listener);
+    }
+
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+
+    /**
+     * Fixe le nombre de runners du lot executes en parallele. Peut etre appele en cours d'execution, par exemple
+     * lorsque des agents d'un {@link StoryCoordinator} se connectent.
+     */
+    public void setParallelism(int parallelism) {
+        synchronized (runningProcesses) {
+            this.parallelism = Math.max(1, parallelism);
+            if (executor != null) {
+                resize(executor, Math.min(this.parallelism, executorSize));
+            }
+        }
+    }
+
+
+    void setScheduler(StoryScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+
+    public void start() {
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    runStories();
+                }
+                catch (RuntimeException e) {
+                    reportCrash(e);
+                }
+                finally {
+                    output.close();
+                    error.close();
+                    finished.countDown();
+                }
+            }
+        }, "ReleaseTest-StoryBatch").start();
+    }
+
+
+    @Override
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int value) {
+            }
+        };
+    }
+
+
+    @Override
+    public InputStream getInputStream() {
+        return output.getInputStream();
+    }
+
+
+    @Override
+    public InputStream getErrorStream() {
+        return error.getInputStream();
+    }
+
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        finished.await();
+        return exitValue;
+    }
+
+
+    @Override
+    public int exitValue() {
+        if (finished.getCount() != 0) {
+            throw new IllegalThreadStateException("Le lot de tests release est en cours d'execution");
+        }
+        return exitValue;
+    }
+
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        synchronized (runningProcesses) {
+            for (Process process : runningProcesses) {
+                process.destroy();
+            }
+        }
+    }
+
+
+    private void runStories() {
+        List<File> failedStories = runStories(stories, 0);
+        for (int attempt = 1; attempt <= maxRetries && !failedStories.isEmpty(); attempt++) {
+            failedStories = runStories(failedStories, attempt);
+        }
+        exitValue = (failedStories.isEmpty() && !destroyed && !crashed ? 0 : 1);
+    }
+
+
+    private List<File> runStories(List<File> toRun, final int attempt) {
+        List<File> failedStories = new ArrayList<File>();
+        ThreadPoolExecutor pool;
+        synchronized (runningProcesses) {
+            executorSize = toRun.size();
+            int size = Math.min(parallelism, executorSize);
+            pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            executor = pool;
+        }
+        try {
+            List<Future<StoryResult>> results = new ArrayList<Future<StoryResult>>();
+            for (final File story : toRun) {
+                results.add(pool.submit(new Callable<StoryResult>() {
+                    public StoryResult call() {
+                        return (destroyed ? null : runStory(story, attempt));
+                    }
+                }));
+            }
+            for (Future<StoryResult> future : results) {
+                try {
+                    StoryResult result = future.get();
+                    if (result != null && !result.isSuccess()) {
+                        failedStories.add(result.getStory());
+                    }
+                }
+                catch (ExecutionException e) {
+                    reportCrash(e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            destroy();
+        }
+        finally {
+            pool.shutdown();
+            synchronized (runningProcesses) {
+                executor = null;
+            }
+        }
+        return failedStories;
+    }
+
+
+    private static void resize(ThreadPoolExecutor pool, int size) {
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        }
+        else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
+    }
+
+
+    /**
+     * @return le resultat du test release, <code>null</code> si le lot est interrompu avant son lancement.
+     */
+    private StoryResult runStory(File story, int attempt) {
+        try {
+            if (!claimSlot(story)) {
+                scheduler.acquire();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            destroy();
+            return null;
+        }
+        try {
+            return runAcquiredStory(story, attempt);
+        }
+        finally {
+            scheduler.release();
+        }
+    }
+
+
+    /**
+     * @return <code>true</code> si le runner pre-demarre du test release lui cede sa place du {@link StoryScheduler}.
+     */
+    private boolean claimSlot(File story) throws InterruptedException {
+        return processFactory instanceof PreStartedProcessFactory
+               && ((PreStartedProcessFactory)processFactory).claimSlot(story);
+    }
+
+
+    private StoryResult runAcquiredStory(File story, int attempt) {
+        for (StoryListener listener : listeners) {
+            listener.storyStarted(story);
+        }
+
+        boolean buffered = parallelism > 1;
+        OutputStream storyOutput = (buffered ? new ByteArrayOutputStream() : output.getOutputStream());
+        OutputStream storyError = (buffered ? new ByteArrayOutputStream() : error.getOutputStream());
+        OutputTail tail = new OutputTail(EXCERPT_SIZE);
+        long startTime = System.currentTimeMillis();
+        int exitCode;
+        try {
+            exitCode = runProcess(story, storyOutput, storyError, tail);
+        }
+        catch (IOException e) {
+            String message = "Impossible de lancer " + story + " : " + e;
+            new PrintStream(storyError, true).println(message);
+            new PrintStream(tail, true).println(message);
+            exitCode = -1;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+        if (buffered) {
+            flush((ByteArrayOutputStream)storyOutput, (ByteArrayOutputStream)storyError);
+        }
+
+        StoryResult result = new StoryResult(story, exitCode, System.currentTimeMillis() - startTime, attempt,
+                                             tail.toString());
+        for (StoryListener listener : listeners) {
+            listener.storyFinished(result);
+        }
+        return result;
+    }
+
+
+    private int runProcess(File story, OutputStream storyOutput, OutputStream storyError, OutputTail tail)
+          throws IOException, InterruptedException {
+        Process process = processFactory.start(story);
+        synchronized (runningProcesses) {
+            runningProcesses.add(process);
+            if (destroyed) {
+                process.destroy();
+            }
+        }
+        try {
+            Thread outputPump = pump(process.getInputStream(), storyOutput, tail);
+            Thread errorPump = pump(process.getErrorStream(), storyError, tail);
+            int exitCode = process.waitFor();
+            outputPump.join();
+            errorPump.join();
+            return exitCode;
+        }
+        finally {
+            synchronized (runningProcesses) {
+                runningProcesses.remove(process);
+            }
+        }
+    }
+
+
+    /**
+     * Signale une erreur inattendue (listener en echec par exemple) : le lot est en echec.
+     */
+    private synchronized void reportCrash(Throwable cause) {
+        crashed = true;
+        PrintStream stream = new PrintStream(error.getOutputStream(), true);
+        stream.println("Erreur inattendue lors de l'execution du lot de tests release :");
+        cause.printStackTrace(stream);
+    }
+
+
+    private synchronized void flush(ByteArrayOutputStream storyOutput, ByteArrayOutputStream storyError) {
+        try {
+            storyOutput.writeTo(output.getOutputStream());
+            storyError.writeTo(error.getOutputStream());
+        }
+        catch (IOException e) {
+            // La console est fermee : la sortie du runner est perdue.
+        }
+    }
+
+
+    private static Thread pump(final InputStream from, final OutputStream to, final OutputTail tail) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                byte[] buffer = new byte[4096];
+                try {
+                    for (int read = from.read(buffer); read != -1; read = from.read(buffer)) {
+                        to.write(buffer, 0, read);
+                        tail.write(buffer, 0, read);
+                    }
+                }
+                catch (IOException e) {
+                    // Le runner a ete arrete : la fin de sa sortie est perdue.
+                }
+            }
+        }, "ReleaseTest-StoryOutput");
+        thread.start();
+        return thread;
+    }
+}
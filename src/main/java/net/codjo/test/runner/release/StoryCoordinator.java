@@ -0,0 +1,538 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CountDownLatch;
+/**
+ * Distribue l'execution de tests release a des agents {@link StoryWorker} connectes en TCP.
+ *
+ * <p> Chaque test release soumis (cf. {@link #start(File)}) est place dans la file de l'agent le moins charge.
+ * Un agent libre prend le premier test release de sa file, sinon vole le dernier de la file la plus longue : la
+ * charge s'equilibre d'elle-meme entre agents rapides et lents. Si un agent disparait, sa file et son test release
+ * en cours sont redistribues (au plus {@link #MAX_REASSIGNMENTS} fois par test release). Un agent dont le poste
+ * disparait sans fermer la connexion (coupure reseau, poste eteint) est detecte par un battement : le coordinateur
+ * envoie {@link #PING} toutes les {@link #HEARTBEAT_INTERVAL} ms, et un agent reste muet pendant
+ * {@link #HEARTBEAT_MISSES} intervalles est considere comme perdu. L'agent applique la meme regle au
+ * coordinateur. </p>
+ *
+ * <p> Un test release distribue est vu comme un {@link Process} local, dont la sortie est celle du runner distant,
+ * transmise au fil de l'eau : le coordinateur s'utilise ainsi comme {@link StoryProcessFactory} d'un
+ * {@link StoryBatchProcess}, qui fusionne les resultats. </p>
+ *
+ * <p> La ligne de commande du runner pouvant contenir des parametres sensibles, le coordinateur n'ecoute que sur
+ * l'adresse fournie (en general la boucle locale) et n'accepte que les agents presentant son jeton
+ * ({@link #getToken()}), tire au hasard a chaque lancement. </p>
+ *
+ * <p> Protocole (messages {@link DataOutputStream#writeUTF(String) UTF}) :
+ * <ul>
+ * <li>agent : {@link #HELLO} nom, jeton ; coordinateur : {@link #COMMAND} commande du runner, repertoire de travail,
+ * intervalle du battement</li>
+ * <li>agent : {@link #NEXT} ; coordinateur : {@link #RUN} chemin du test release, ou {@link #STOP}</li>
+ * <li>agent : {@link #OUTPUT} taille, octets de la sortie du runner (autant de fois que necessaire) ;
+ * {@link #RESULT} code retour, duree</li>
+ * <li>coordinateur : {@link #CANCEL} pour arreter le test release en cours</li>
+ * <li>coordinateur : {@link #PING} ; agent : {@link #PONG}</li>
+ * </ul></p>
+ */
+class StoryCoordinator implements StoryProcessFactory {
+    static final String HELLO = "HELLO";
+    static final String COMMAND = "COMMAND";
+    static final String NEXT = "NEXT";
+    static final String RUN = "RUN";
+    static final String OUTPUT = "OUTPUT";
+    static final String RESULT = "RESULT";
+    static final String CANCEL = "CANCEL";
+    static final String STOP = "STOP";
+    static final String PING = "PING";
+    static final String PONG = "PONG";
+    static final int MAX_REASSIGNMENTS = 2;
+    static final int HEARTBEAT_INTERVAL = 5000;
+    static final int HEARTBEAT_MISSES = 3;
+    static final int MAX_OUTPUT_CHUNK = 1024 * 1024;
+    private final ServerSocket serverSocket;
+    private final String token = new BigInteger(130, new SecureRandom()).toString(32);
+    private final List<String> runnerCommand;
+    private final String workingDirectory;
+    private final Object lock = new Object();
+    private final LinkedList<RemoteStory> unassigned = new LinkedList<RemoteStory>();
+    private final Map<WorkerConnection, LinkedList<RemoteStory>> queues
+          = new LinkedHashMap<WorkerConnection, LinkedList<RemoteStory>>();
+    private final Timer heartbeat = new Timer("ReleaseTest-Heartbeat", true);
+    private int heartbeatInterval = HEARTBEAT_INTERVAL;
+    private WorkerCountListener workerCountListener;
+    private boolean closed;
+
+
+    /**
+     * @param bindAddress      adresse d'ecoute, toutes les adresses si <code>null</code>.
+     * @param runnerCommand    ligne de commande du runner, sans le test release (ajoute par l'agent).
+     * @param workingDirectory repertoire de travail du runner.
+     */
+    StoryCoordinator(InetAddress bindAddress, int port, List<String> runnerCommand, String workingDirectory)
+          throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, bindAddress);
+        this.runnerCommand = new ArrayList<String>(runnerCommand);
+        this.workingDirectory = workingDirectory;
+    }
+
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    public InetAddress getBindAddress() {
+        return serverSocket.getInetAddress();
+    }
+
+
+    public String getToken() {
+        return token;
+    }
+
+
+    public int getWorkerCount() {
+        synchronized (lock) {
+            return queues.size();
+        }
+    }
+
+
+    public void setWorkerCountListener(WorkerCountListener workerCountListener) {
+        this.workerCountListener = workerCountListener;
+    }
+
+
+    /**
+     * Fixe l'intervalle du battement ; a appeler avant {@link #open()}.
+     */
+    void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+
+    public void open() {
+        heartbeat.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                List<WorkerConnection> workers;
+                synchronized (lock) {
+                    workers = new ArrayList<WorkerConnection>(queues.keySet());
+                }
+                for (WorkerConnection worker : workers) {
+                    worker.ping();
+                }
+            }
+        }, heartbeatInterval, heartbeatInterval);
+        new Thread(new Runnable() {
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        new WorkerConnection(serverSocket.accept()).start();
+                    }
+                    catch (IOException e) {
+                        // Coordinateur ferme.
+                    }
+                }
+            }
+        }, "ReleaseTest-Coordinator").start();
+    }
+
+
+    public Process start(File story) throws IOException {
+        RemoteStory remoteStory = new RemoteStory(story);
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Le coordinateur est arrete");
+            }
+            LinkedList<RemoteStory> shortestQueue = null;
+            for (LinkedList<RemoteStory> queue : queues.values()) {
+                if (shortestQueue == null || queue.size() < shortestQueue.size()) {
+                    shortestQueue = queue;
+                }
+            }
+            (shortestQueue != null ? shortestQueue : unassigned).addLast(remoteStory);
+            lock.notifyAll();
+        }
+        return remoteStory;
+    }
+
+
+    /**
+     * Arrete le coordinateur : les agents connectes sont deconnectes et les tests release non termines echouent.
+     */
+    public void close() {
+        List<WorkerConnection> workers;
+        synchronized (lock) {
+            closed = true;
+            workers = new ArrayList<WorkerConnection>(queues.keySet());
+            for (LinkedList<RemoteStory> queue : queues.values()) {
+                unassigned.addAll(queue);
+                queue.clear();
+            }
+            for (RemoteStory remoteStory : unassigned) {
+                remoteStory.complete(-1, "Coordinator stopped before " + remoteStory.story.getName() + " ran\n");
+            }
+            unassigned.clear();
+            lock.notifyAll();
+        }
+        heartbeat.cancel();
+        try {
+            serverSocket.close();
+        }
+        catch (IOException e) {
+            // Deja ferme.
+        }
+        for (WorkerConnection worker : workers) {
+            worker.disconnect();
+        }
+    }
+
+
+    private RemoteStory takeWork(WorkerConnection worker) throws InterruptedException {
+        synchronized (lock) {
+            while (!closed) {
+                RemoteStory remoteStory = pollWork(queues.get(worker));
+                if (remoteStory != null) {
+                    remoteStory.worker = worker;
+                    return remoteStory;
+                }
+                lock.wait();
+            }
+            return null;
+        }
+    }
+
+
+    private RemoteStory pollWork(LinkedList<RemoteStory> ownQueue) {
+        if (!ownQueue.isEmpty()) {
+            return ownQueue.removeFirst();
+        }
+        if (!unassigned.isEmpty()) {
+            return unassigned.removeFirst();
+        }
+        LinkedList<RemoteStory> longestQueue = ownQueue;
+        for (LinkedList<RemoteStory> queue : queues.values()) {
+            if (queue.size() > longestQueue.size()) {
+                longestQueue = queue;
+            }
+        }
+        return (longestQueue.isEmpty() ? null : longestQueue.removeLast());
+    }
+
+
+    private void cancel(RemoteStory remoteStory) {
+        WorkerConnection worker;
+        synchronized (lock) {
+            boolean queued = unassigned.remove(remoteStory);
+            for (LinkedList<RemoteStory> queue : queues.values()) {
+                queued |= queue.remove(remoteStory);
+            }
+            if (queued) {
+                remoteStory.complete(-1, "Cancelled before running\n");
+                return;
+            }
+            worker = remoteStory.worker;
+        }
+        if (worker != null) {
+            worker.cancel(remoteStory);
+        }
+    }
+
+
+    private void fireWorkerCountChanged() {
+        WorkerCountListener listener = workerCountListener;
+        if (listener != null) {
+            listener.workerCountChanged(getWorkerCount());
+        }
+    }
+
+
+    private void workerLost(WorkerConnection worker, RemoteStory running) {
+        boolean connected;
+        synchronized (lock) {
+            LinkedList<RemoteStory> queue = queues.remove(worker);
+            connected = (queue != null);
+            if (queue != null) {
+                unassigned.addAll(0, queue);
+            }
+            if (running != null) {
+                running.worker = null;
+                if (closed || ++running.reassignments > MAX_REASSIGNMENTS) {
+                    running.complete(-1, "Worker " + worker.name + " lost while running " + running.story.getName()
+                                         + "\n");
+                }
+                else {
+                    running.append("Worker " + worker.name + " lost, " + running.story.getName()
+                                   + " runs again on another worker\n");
+                    unassigned.addFirst(running);
+                }
+            }
+            lock.notifyAll();
+        }
+        if (connected) {
+            fireWorkerCountChanged();
+        }
+    }
+
+
+    /**
+     * Averti de la connexion ou de la perte d'un agent.
+     */
+    interface WorkerCountListener {
+        void workerCountChanged(int workerCount);
+    }
+
+    /**
+     * Connexion avec un agent, traitee par un thread dedie.
+     */
+    private class WorkerConnection extends Thread {
+        private final Socket socket;
+        private DataOutputStream output;
+        private String name;
+
+
+        WorkerConnection(Socket socket) {
+            super("ReleaseTest-Worker");
+            this.socket = socket;
+        }
+
+
+        @Override
+        public void run() {
+            RemoteStory running = null;
+            try {
+                socket.setKeepAlive(true);
+                socket.setSoTimeout(heartbeatInterval * HEARTBEAT_MISSES);
+                DataInputStream input = new DataInputStream(socket.getInputStream());
+                output = new DataOutputStream(socket.getOutputStream());
+                expect(input, HELLO);
+                name = input.readUTF();
+                if (!MessageDigest.isEqual(token.getBytes("UTF-8"), input.readUTF().getBytes("UTF-8"))) {
+                    throw new IOException("Jeton invalide pour l'agent " + name);
+                }
+                send(COMMAND, runnerCommand.size());
+                for (String argument : runnerCommand) {
+                    send(argument);
+                }
+                send(workingDirectory);
+                send(String.valueOf(heartbeatInterval));
+                synchronized (lock) {
+                    if (closed) {
+                        return;
+                    }
+                    queues.put(this, new LinkedList<RemoteStory>());
+                    lock.notifyAll();
+                }
+                fireWorkerCountChanged();
+
+                while (true) {
+                    String message = input.readUTF();
+                    if (PONG.equals(message)) {
+                        continue;
+                    }
+                    if (NEXT.equals(message)) {
+                        running = takeWork(this);
+                        if (running == null) {
+                            send(STOP);
+                            return;
+                        }
+                        running.append("[" + name + "]\n");
+                        send(RUN, running.story.getPath());
+                    }
+                    else if (OUTPUT.equals(message)) {
+                        int length = input.readInt();
+                        if (length < 0 || length > MAX_OUTPUT_CHUNK) {
+                            throw new IOException("Sortie invalide de l'agent " + name + " : " + length);
+                        }
+                        byte[] chunk = new byte[length];
+                        input.readFully(chunk);
+                        if (running != null) {
+                            running.append(chunk);
+                        }
+                    }
+                    else if (RESULT.equals(message) && running != null) {
+                        int exitCode = input.readInt();
+                        long durationMillis = input.readLong();
+                        running.complete(exitCode, "[" + name + ", " + durationMillis + " ms]\n");
+                        running = null;
+                    }
+                    else {
+                        throw new IOException("Message inattendu de l'agent " + name + " : " + message);
+                    }
+                }
+            }
+            catch (IOException e) {
+                // Agent perdu (connexion fermee ou battement absent) : son travail est redistribue.
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                workerLost(this, running);
+                disconnect();
+            }
+        }
+
+
+        void ping() {
+            try {
+                send(PING);
+            }
+            catch (IOException e) {
+                disconnect();
+            }
+        }
+
+
+        void cancel(RemoteStory remoteStory) {
+            try {
+                send(CANCEL, remoteStory.story.getPath());
+            }
+            catch (IOException e) {
+                disconnect();
+            }
+        }
+
+
+        void disconnect() {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Deja ferme.
+            }
+        }
+
+
+        private void expect(DataInputStream input, String expected) throws IOException {
+            String message = input.readUTF();
+            if (!expected.equals(message)) {
+                throw new IOException("Message inattendu : " + message);
+            }
+        }
+
+
+        private synchronized void send(String message, Object... arguments) throws IOException {
+            output.writeUTF(message);
+            for (Object argument : arguments) {
+                if (argument instanceof Integer) {
+                    output.writeInt((Integer)argument);
+                }
+                else {
+                    output.writeUTF(String.valueOf(argument));
+                }
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Test release distribue, vu comme un processus local.
+     */
+    private class RemoteStory extends Process {
+        private final File story;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final OutputPipe output = new OutputPipe();
+        private WorkerConnection worker;
+        private int reassignments;
+        private volatile int exitCode;
+
+
+        RemoteStory(File story) {
+            this.story = story;
+        }
+
+
+        void append(String message) {
+            append(message.getBytes());
+        }
+
+
+        synchronized void append(byte[] chunk) {
+            if (finished.getCount() == 0) {
+                return;
+            }
+            try {
+                output.getOutputStream().write(chunk);
+            }
+            catch (IOException e) {
+                // Tube ferme : le test release est termine.
+            }
+        }
+
+
+        synchronized void complete(int code, String message) {
+            if (finished.getCount() == 0) {
+                return;
+            }
+            append(message);
+            exitCode = code;
+            output.close();
+            finished.countDown();
+        }
+
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+
+        @Override
+        public InputStream getInputStream() {
+            return output.getInputStream();
+        }
+
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            finished.await();
+            return exitCode;
+        }
+
+
+        @Override
+        public int exitValue() {
+            if (finished.getCount() != 0) {
+                throw new IllegalThreadStateException(story + " est en cours d'execution");
+            }
+            return exitCode;
+        }
+
+
+        @Override
+        public void destroy() {
+            cancel(this);
+        }
+    }
+}
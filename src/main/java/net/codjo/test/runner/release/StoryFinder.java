@@ -0,0 +1,84 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+/**
+ * Recherche les tests release (stories) contenus dans un fichier ou un repertoire.
+ *
+ * <p> Avec un {@link StoryIndex}, la recherche est une requete sur l'index ; sinon chaque fichier est lu. </p>
+ *
+ * <p> {@link #containsStories(File)} sert a l'IHM (actions de lancement contextuelles) : elle se limite aux fichiers
+ * directement dans le repertoire, sans parcours de l'arborescence ni attente de l'index. </p>
+ */
+class StoryFinder {
+    private final FileFormatRecognizer recognizer;
+    private final StoryIndex index;
+
+
+    StoryFinder() {
+        this(new FileFormatRecognizer());
+    }
+
+
+    StoryFinder(FileFormatRecognizer recognizer) {
+        this.recognizer = recognizer;
+        this.index = null;
+    }
+
+
+    StoryFinder(StoryIndex index) {
+        this.recognizer = new FileFormatRecognizer();
+        this.index = index;
+    }
+
+
+    /**
+     * @return le fichier lui-meme s'il s'agit d'un test release, sinon les tests release du repertoire et de ses
+     *         sous-repertoires, tries par chemin.
+     */
+    public List<File> findStories(File scope) {
+        if (index != null) {
+            return index.findStories(scope);
+        }
+        List<File> stories = new ArrayList<File>();
+        if (scope.isDirectory()) {
+            collectStories(scope, stories);
+        }
+        else if (recognizer.isReleaseTestFileFormat(scope.getAbsolutePath())) {
+            stories.add(scope);
+        }
+        return stories;
+    }
+
+
+    /**
+     * @return <code>true</code> si le fichier est un test release, ou si des fichiers directement dans le
+     *         repertoire en sont.
+     */
+    public boolean containsStories(File scope) {
+        return recognizer.isReleaseTestFile(scope.getAbsolutePath());
+    }
+
+
+    private void collectStories(File directory, List<File> stories) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectStories(file, stories);
+            }
+            else if (recognizer.isReleaseTestFileFormat(file.getAbsolutePath())) {
+                stories.add(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+/**
+ * Memorise, pour chaque test release, les empreintes du classpath lors de son dernier passage au vert.
+ *
+ * <p> Le store sert aussi de cache au MD5 des jars du classpath (cf. {@link ClasspathFingerprinter}), sous des cles
+ * prefixees par {@link #JAR_DIGEST_PREFIX} : un test release est identifie par son chemin absolu et ne peut pas les
+ * confondre avec les siennes. </p>
+ */
+class StoryFingerprintStore {
+    private static final char SEPARATOR = '|';
+    private static final String JAR_DIGEST_PREFIX = "jar" + SEPARATOR;
+    private final File storeFile;
+    private final Properties properties = new Properties();
+
+
+    StoryFingerprintStore(File storeFile) throws IOException {
+        this.storeFile = storeFile;
+        if (storeFile.isFile()) {
+            InputStream inputStream = new FileInputStream(storeFile);
+            try {
+                properties.load(inputStream);
+            }
+            finally {
+                inputStream.close();
+            }
+        }
+    }
+
+
+    /**
+     * @return les empreintes du dernier passage au vert, ou <code>null</code> si le test release n'est jamais passe.
+     */
+    public Map<String, String> getLastGreen(String story) {
+        String prefix = story + SEPARATOR;
+        Map<String, String> fingerprints = null;
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                if (fingerprints == null) {
+                    fingerprints = new HashMap<String, String>();
+                }
+                fingerprints.put(key.substring(prefix.length()), properties.getProperty(key));
+            }
+        }
+        return fingerprints;
+    }
+
+
+    public void recordGreen(String story, Map<String, String> fingerprints) {
+        String prefix = story + SEPARATOR;
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(prefix)) {
+                properties.remove(key);
+            }
+        }
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            properties.setProperty(prefix + entry.getKey(), entry.getValue());
+        }
+    }
+
+
+    /**
+     * @return le MD5 memorise du jar, ou <code>null</code> s'il est inconnu ou si le jar a change depuis.
+     */
+    public String getJarDigest(File jar) {
+        String cached = properties.getProperty(JAR_DIGEST_PREFIX + jar.getAbsolutePath());
+        String signature = toSignature(jar);
+        return (cached != null && cached.startsWith(signature) ? cached.substring(signature.length()) : null);
+    }
+
+
+    public void putJarDigest(File jar, String digest) {
+        properties.setProperty(JAR_DIGEST_PREFIX + jar.getAbsolutePath(), toSignature(jar) + digest);
+    }
+
+
+    public void save() throws IOException {
+        storeFile.getParentFile().mkdirs();
+        OutputStream outputStream = new FileOutputStream(storeFile);
+        try {
+            properties.store(outputStream, "Classpath fingerprints of the last green run");
+        }
+        finally {
+            outputStream.close();
+        }
+    }
+
+
+    private static String toSignature(File jar) {
+        return jar.length() + ":" + jar.lastModified() + ":";
+    }
+}
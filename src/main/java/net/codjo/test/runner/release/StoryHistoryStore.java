@@ -0,0 +1,84 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+/**
+ * Historique des dernieres executions de chaque test release, sous la forme d'une suite de {@link #PASSED} et
+ * {@link #FAILED} (la plus recente en dernier).
+ *
+ * <p> Un test release est instable ('flaky') lorsque son historique alterne au moins {@link #FLAKY_TRANSITIONS}
+ * fois entre succes et echec. </p>
+ */
+class StoryHistoryStore {
+    static final char PASSED = 'P';
+    static final char FAILED = 'F';
+    static final int HISTORY_SIZE = 20;
+    static final int FLAKY_TRANSITIONS = 2;
+    private final File storeFile;
+    private final Properties properties = new Properties();
+
+
+    StoryHistoryStore(File storeFile) throws IOException {
+        this.storeFile = storeFile;
+        if (storeFile.isFile()) {
+            InputStream inputStream = new FileInputStream(storeFile);
+            try {
+                properties.load(inputStream);
+            }
+            finally {
+                inputStream.close();
+            }
+        }
+    }
+
+
+    public String getHistory(String story) {
+        return properties.getProperty(story, "");
+    }
+
+
+    public void record(String story, boolean success) {
+        String history = getHistory(story) + (success ? PASSED : FAILED);
+        if (history.length() > HISTORY_SIZE) {
+            history = history.substring(history.length() - HISTORY_SIZE);
+        }
+        properties.setProperty(story, history);
+    }
+
+
+    public boolean isFlaky(String story) {
+        return isFlakyHistory(getHistory(story));
+    }
+
+
+    static boolean isFlakyHistory(String history) {
+        int transitions = 0;
+        for (int i = 1; i < history.length(); i++) {
+            if (history.charAt(i) != history.charAt(i - 1)) {
+                transitions++;
+            }
+        }
+        return transitions >= FLAKY_TRANSITIONS;
+    }
+
+
+    public void save() throws IOException {
+        storeFile.getParentFile().mkdirs();
+        OutputStream outputStream = new FileOutputStream(storeFile);
+        try {
+            properties.store(outputStream, "Release test history (P = passed, F = failed)");
+        }
+        finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+/**
+ * Index persistant des fichiers d'un projet : pour chaque fichier, sa date de modification, s'il s'agit d'un test
+ * release et le nom du test release.
+ *
+ * <p> Un repertoire est parcouru une seule fois ({@link #findStories(File)}), puis l'index est tenu a jour fichier
+ * par fichier ({@link #update(File)}, {@link #remove(File)}) : la recherche des tests release d'un repertoire devient
+ * une requete sur l'index. Seuls les fichiers <code>.xml</code> des repertoires sont indexes. </p>
+ *
+ * <p> Les fichiers peuvent changer sans que l'index en soit averti (IDE ferme, outil externe) : a chaque recherche,
+ * une entree dont la date de modification ne correspond plus au fichier est recalculee, et un repertoire dont la date
+ * de modification a change est relu pour y trouver les nouveaux fichiers. </p>
+ *
+ * <p> L'index est sauvegarde dans un fichier binaire (chemins tries, chacun code par la longueur du prefixe commun
+ * avec le precedent suivie du suffixe). Un fichier illisible ou d'une autre version est ignore. </p>
+ */
+class StoryIndex {
+    static final int MAGIC = 0x52544958;
+    static final int VERSION = 2;
+    private static final int SNIFF_SIZE = 10000;
+    private static final String STORY_EXTENSION = ".xml";
+    private static final Pattern STORY_NAME = Pattern.compile("<release-test[^>]*?\\sname\\s*=\\s*[\"']([^\"']*)");
+    private final File indexFile;
+    private final FileFormatRecognizer recognizer;
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+    private final TreeMap<String, Long> directories = new TreeMap<String, Long>();
+    private boolean dirty;
+
+
+    StoryIndex(File indexFile, FileFormatRecognizer recognizer) {
+        this.indexFile = indexFile;
+        this.recognizer = recognizer;
+        if (indexFile.isFile()) {
+            try {
+                load();
+            }
+            catch (IOException e) {
+                entries.clear();
+                directories.clear();
+            }
+        }
+    }
+
+
+    /**
+     * @return le fichier lui-meme s'il s'agit d'un test release, sinon les tests release du repertoire et de ses
+     *         sous-repertoires, tries par chemin.
+     */
+    public synchronized List<File> findStories(File scope) {
+        List<File> stories = new ArrayList<File>();
+        if (!scope.isDirectory()) {
+            if (isStory(scope)) {
+                stories.add(scope);
+            }
+            return stories;
+        }
+
+        String directory = scope.getAbsolutePath();
+        if (directories.containsKey(directory)) {
+            refreshDirectories(directory);
+        }
+        else {
+            indexDirectory(scope.getAbsoluteFile());
+        }
+        for (String path : new ArrayList<String>(getEntriesUnder(directory).keySet())) {
+            if (isStory(new File(path))) {
+                stories.add(new File(path));
+            }
+        }
+        return stories;
+    }
+
+
+    public synchronized boolean isStory(File file) {
+        Entry entry = getEntry(file);
+        return entry != null && entry.story;
+    }
+
+
+    /**
+     * @return le nom declare par le test release (attribut <code>name</code>), <code>null</code> s'il n'est pas
+     *         renseigne ou si le fichier n'est pas un test release.
+     */
+    public synchronized String getStoryName(File file) {
+        Entry entry = getEntry(file);
+        return (entry != null && entry.story && entry.name.length() > 0 ? entry.name : null);
+    }
+
+
+    /**
+     * Prend en compte la creation ou la modification d'un fichier ou d'un repertoire. Seuls les fichiers deja
+     * indexes ou situes dans un repertoire indexe sont concernes.
+     */
+    public synchronized void update(File file) {
+        File absoluteFile = file.getAbsoluteFile();
+        String path = absoluteFile.getPath();
+        File parent = absoluteFile.getParentFile();
+        boolean inIndexedDirectory = (parent != null && directories.containsKey(parent.getPath()));
+        if (absoluteFile.isDirectory()) {
+            if (inIndexedDirectory || directories.containsKey(path)) {
+                indexDirectory(absoluteFile);
+            }
+        }
+        else if (entries.containsKey(path) || (inIndexedDirectory && isIndexable(absoluteFile))) {
+            getEntry(absoluteFile);
+        }
+    }
+
+
+    /**
+     * Prend en compte la suppression d'un fichier ou d'un repertoire.
+     */
+    public synchronized void remove(File file) {
+        String path = file.getAbsolutePath();
+        dirty |= (entries.remove(path) != null);
+        dirty |= (directories.remove(path) != null);
+        SortedMap<String, Entry> children = getEntriesUnder(path);
+        SortedMap<String, Long> subDirectories = getDirectoriesUnder(path);
+        dirty |= !children.isEmpty() || !subDirectories.isEmpty();
+        children.clear();
+        subDirectories.clear();
+    }
+
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    public synchronized void save() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        indexFile.getParentFile().mkdirs();
+        File temporaryFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(directories.size());
+            for (Map.Entry<String, Long> directory : directories.entrySet()) {
+                output.writeUTF(directory.getKey());
+                output.writeLong(directory.getValue());
+            }
+            output.writeInt(entries.size());
+            String previous = "";
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                String path = entry.getKey();
+                int common = commonPrefixLength(previous, path);
+                output.writeShort(common);
+                output.writeUTF(path.substring(common));
+                output.writeLong(entry.getValue().lastModified);
+                output.writeBoolean(entry.getValue().story);
+                if (entry.getValue().story) {
+                    output.writeUTF(entry.getValue().name);
+                }
+                previous = path;
+            }
+        }
+        finally {
+            output.close();
+        }
+        indexFile.delete();
+        if (!temporaryFile.renameTo(indexFile)) {
+            throw new IOException("Impossible de remplacer " + indexFile);
+        }
+        dirty = false;
+    }
+
+
+    private void load() throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Format d'index inconnu : " + indexFile);
+            }
+            for (int count = input.readInt(); count > 0; count--) {
+                String directory = input.readUTF();
+                directories.put(directory, input.readLong());
+            }
+            String previous = "";
+            for (int count = input.readInt(); count > 0; count--) {
+                int common = input.readShort();
+                if (common < 0 || common > previous.length()) {
+                    throw new IOException("Index corrompu : " + indexFile);
+                }
+                String path = previous.substring(0, common) + input.readUTF();
+                long lastModified = input.readLong();
+                boolean story = input.readBoolean();
+                entries.put(path, new Entry(lastModified, story, story ? input.readUTF() : ""));
+                previous = path;
+            }
+        }
+        finally {
+            input.close();
+        }
+    }
+
+
+    private Entry getEntry(File file) {
+        String path = file.getAbsolutePath();
+        Entry entry = entries.get(path);
+        long lastModified = file.lastModified();
+        if (lastModified == 0 || !file.isFile()) {
+            dirty |= (entries.remove(path) != null);
+            return null;
+        }
+        if (entry == null || entry.lastModified != lastModified) {
+            entry = sniff(file, lastModified);
+            entries.put(path, entry);
+            dirty = true;
+        }
+        return entry;
+    }
+
+
+    private void indexDirectory(File directory) {
+        directories.put(directory.getPath(), directory.lastModified());
+        dirty = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                indexDirectory(file);
+            }
+            else if (isIndexable(file)) {
+                getEntry(file);
+            }
+        }
+    }
+
+
+    /**
+     * Relit les repertoires indexes dont la date de modification a change (fichiers ou sous-repertoires crees).
+     * Les fichiers disparus sont retires lors de la verification de leur entree.
+     */
+    private void refreshDirectories(String root) {
+        List<String> known = new ArrayList<String>();
+        known.add(root);
+        known.addAll(getDirectoriesUnder(root).keySet());
+        for (String path : known) {
+            Long lastModified = directories.get(path);
+            if (lastModified == null) {
+                continue;
+            }
+            File directory = new File(path);
+            if (!directory.isDirectory()) {
+                remove(directory);
+            }
+            else if (directory.lastModified() != lastModified) {
+                directories.put(path, directory.lastModified());
+                dirty = true;
+                File[] files = directory.listFiles();
+                for (File file : (files == null ? new File[0] : files)) {
+                    if (file.isDirectory()) {
+                        if (!directories.containsKey(file.getPath())) {
+                            indexDirectory(file);
+                        }
+                    }
+                    else if (isIndexable(file)) {
+                        getEntry(file);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private Entry sniff(File file, long lastModified) {
+        try {
+            Reader reader = new FileReader(file);
+            try {
+                char[] buffer = new char[SNIFF_SIZE];
+                int length = Math.max(0, reader.read(buffer));
+                String content = new String(buffer, 0, length);
+                if (!recognizer.isReleaseTestFileFormat(new StringReader(content))) {
+                    return new Entry(lastModified, false, "");
+                }
+                Matcher name = STORY_NAME.matcher(content);
+                return new Entry(lastModified, true, name.find() ? name.group(1) : "");
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (IOException e) {
+            return new Entry(lastModified, false, "");
+        }
+    }
+
+
+    private static boolean isIndexable(File file) {
+        return file.getName().toLowerCase().endsWith(STORY_EXTENSION);
+    }
+
+
+    private SortedMap<String, Entry> getEntriesUnder(String directory) {
+        String prefix = directory + File.separator;
+        return entries.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+
+    private SortedMap<String, Long> getDirectoriesUnder(String directory) {
+        String prefix = directory + File.separator;
+        return directories.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+
+    private static int commonPrefixLength(String first, String second) {
+        int max = Math.min(Math.min(first.length(), second.length()), Short.MAX_VALUE);
+        int length = 0;
+        while (length < max && first.charAt(length) == second.charAt(length)) {
+            length++;
+        }
+        return length;
+    }
+
+
+    private static class Entry {
+        private final long lastModified;
+        private final boolean story;
+        private final String name;
+
+
+        Entry(long lastModified, boolean story, String name) {
+            this.lastModified = lastModified;
+            this.story = story;
+            this.name = name;
+        }
+    }
+}
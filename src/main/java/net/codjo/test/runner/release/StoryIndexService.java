@@ -0,0 +1,175 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileAdapter;
+import com.intellij.openapi.vfs.VirtualFileEvent;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.VirtualFileMoveEvent;
+import com.intellij.openapi.vfs.VirtualFilePropertyEvent;
+import com.intellij.util.Alarm;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+/**
+ * Service projet maintenant le {@link StoryIndex} du projet a partir des evenements du systeme de fichiers d'IDEA.
+ *
+ * <p> L'index est stocke dans le repertoire systeme d'IDEA et recharge a l'ouverture du projet. Il est sauvegarde
+ * peu apres chaque modification (cf. {@link #SAVE_DELAY}) et a la fermeture du projet. </p>
+ *
+ * <p> Les evenements du systeme de fichiers arrivent sur le thread Swing : leur prise en compte (lecture des fichiers,
+ * parcours des nouveaux repertoires) est faite dans l'ordre sur un thread dedie. Un evenement perdu a la fermeture du
+ * projet n'est pas grave, l'index se recalant sur les dates de modification a la recherche suivante. </p>
+ */
+public class StoryIndexService extends VirtualFileAdapter implements Disposable {
+    static final int SAVE_DELAY = 5000;
+    private final Logger logger = Logger.getInstance(StoryIndexService.class.getName());
+    private final StoryIndex index;
+    private final Alarm saveAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ReleaseTest-StoryIndex");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private volatile boolean disposed;
+
+
+    public StoryIndexService(Project project) {
+        File indexFile = new File(PathManager.getSystemPath(), "release-test-index/" + project.getName() + "-"
+                                                               + project.getLocationHash() + ".idx");
+        index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        Disposer.register(project, this);
+        VirtualFileManager.getInstance().addVirtualFileListener(this, this);
+    }
+
+
+    public static StoryIndex getIndex(Project project) {
+        return ServiceManager.getService(project, StoryIndexService.class).index;
+    }
+
+
+    /**
+     * @return un {@link StoryFinder} interrogeant l'index du projet.
+     */
+    public static StoryFinder createStoryFinder(Project project) {
+        return new StoryFinder(getIndex(project));
+    }
+
+
+    public void dispose() {
+        disposed = true;
+        indexer.shutdownNow();
+        save();
+    }
+
+
+    @Override
+    public void contentsChanged(VirtualFileEvent event) {
+        update(event.getFile());
+    }
+
+
+    @Override
+    public void fileCreated(VirtualFileEvent event) {
+        update(event.getFile());
+    }
+
+
+    @Override
+    public void fileDeleted(VirtualFileEvent event) {
+        remove(new File(event.getFile().getPath()));
+    }
+
+
+    @Override
+    public void beforeFileMovement(VirtualFileMoveEvent event) {
+        remove(new File(event.getFile().getPath()));
+    }
+
+
+    @Override
+    public void fileMoved(VirtualFileMoveEvent event) {
+        update(event.getFile());
+    }
+
+
+    @Override
+    public void propertyChanged(VirtualFilePropertyEvent event) {
+        if (!VirtualFile.PROP_NAME.equals(event.getPropertyName()) || event.getFile().getParent() == null) {
+            return;
+        }
+        remove(new File(event.getFile().getParent().getPath(), String.valueOf(event.getOldValue())));
+        update(event.getFile());
+    }
+
+
+    private void update(VirtualFile file) {
+        final File updated = new File(file.getPath());
+        submit(new Runnable() {
+            public void run() {
+                index.update(updated);
+            }
+        });
+    }
+
+
+    private void remove(final File removed) {
+        submit(new Runnable() {
+            public void run() {
+                index.remove(removed);
+            }
+        });
+    }
+
+
+    private void submit(final Runnable indexing) {
+        try {
+            indexer.execute(new Runnable() {
+                public void run() {
+                    indexing.run();
+                    scheduleSave();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            // Projet ferme : l'index se recalera a la prochaine recherche.
+        }
+    }
+
+
+    private void scheduleSave() {
+        if (disposed) {
+            return;
+        }
+        saveAlarm.cancelAllRequests();
+        saveAlarm.addRequest(new Runnable() {
+            public void run() {
+                save();
+            }
+        }, SAVE_DELAY);
+    }
+
+
+    private void save() {
+        try {
+            index.save();
+        }
+        catch (IOException e) {
+            logger.warn("Impossible de sauvegarder l'index des tests release", e);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+/**
+ * Point d'entree d'un runner pre-demarre (cf. {@link PipelinedStoryLauncher}) : charge la classe principale du
+ * runner, puis attend sur l'entree standard le chemin du test release a executer.
+ *
+ * <p> Usage : <code>java ... net.codjo.test.runner.release.StoryLauncher classePrincipale [arguments]</code>. Le
+ * chemin lu est ajoute aux arguments transmis a la methode <code>main</code> de la classe principale. </p>
+ */
+public final class StoryLauncher {
+    private StoryLauncher() {
+    }
+
+
+    public static void main(String[] args) throws Throwable {
+        if (args.length < 1) {
+            System.err.println("Usage: StoryLauncher mainClass [arguments]");
+            System.exit(2);
+        }
+        Method main = Class.forName(args[0]).getMethod("main", String[].class);
+
+        String story = readLine(System.in);
+        if (story == null) {
+            return;
+        }
+        String[] runnerArgs = new String[args.length];
+        System.arraycopy(args, 1, runnerArgs, 0, args.length - 1);
+        runnerArgs[args.length - 1] = story;
+        try {
+            main.invoke(null, new Object[]{runnerArgs});
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    /**
+     * Lit une ligne octet par octet, afin de laisser la suite de l'entree standard au runner.
+     *
+     * @return la ligne, <code>null</code> si l'entree est fermee avant la fin de ligne.
+     */
+    static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int read = input.read(); read != '\n'; read = input.read()) {
+            if (read == -1) {
+                return null;
+            }
+            line.write(read);
+        }
+        return line.toString("UTF-8");
+    }
+}
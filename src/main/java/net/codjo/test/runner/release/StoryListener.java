@@ -0,0 +1,16 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+/**
+ * Ecoute le deroulement d'un {@link StoryBatchProcess}.
+ */
+interface StoryListener {
+    void storyStarted(File story);
+
+
+    void storyFinished(StoryResult result);
+}
@@ -0,0 +1,111 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+/**
+ * Resout la liste des tests release d'une configuration composee.
+ *
+ * <p> Chaque motif designe un test release, un repertoire (parcouru recursivement) ou un ensemble de fichiers via
+ * les jokers <code>*</code>, <code>**</code> (plusieurs niveaux de repertoires) et <code>?</code>. Les motifs
+ * relatifs sont resolus depuis le repertoire du module. </p>
+ */
+class StoryPatternResolver {
+    private final StoryFinder storyFinder;
+
+
+    StoryPatternResolver(StoryFinder storyFinder) {
+        this.storyFinder = storyFinder;
+    }
+
+
+    /**
+     * @return les tests release designes par les motifs, tries par chemin et sans doublon.
+     */
+    public List<File> resolve(File moduleDirectory, List<String> patterns) {
+        Set<File> stories = new TreeSet<File>();
+        for (String pattern : patterns) {
+            pattern = pattern.trim();
+            if (pattern.length() == 0) {
+                continue;
+            }
+            File scope = new File(pattern);
+            if (!scope.isAbsolute()) {
+                scope = new File(moduleDirectory, pattern);
+            }
+            if (isGlob(pattern)) {
+                stories.addAll(findMatchingStories(scope));
+            }
+            else {
+                stories.addAll(storyFinder.findStories(scope));
+            }
+        }
+        return new ArrayList<File>(stories);
+    }
+
+
+    private List<File> findMatchingStories(File glob) {
+        String path = normalize(glob.getPath());
+        int firstJoker = indexOfJoker(path);
+        File root = new File(path.substring(0, path.lastIndexOf('/', firstJoker) + 1));
+        Pattern regexp = toRegexp(path);
+
+        List<File> matchingStories = new ArrayList<File>();
+        for (File story : storyFinder.findStories(root)) {
+            if (regexp.matcher(normalize(story.getPath())).matches()) {
+                matchingStories.add(story);
+            }
+        }
+        return matchingStories;
+    }
+
+
+    static boolean isGlob(String pattern) {
+        return indexOfJoker(pattern) >= 0;
+    }
+
+
+    static Pattern toRegexp(String glob) {
+        StringBuilder regexp = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char current = glob.charAt(i);
+            if (current == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                boolean directories = i + 2 < glob.length() && glob.charAt(i + 2) == '/';
+                regexp.append(directories ? "(.*/)?" : ".*");
+                i += (directories ? 2 : 1);
+            }
+            else if (current == '*') {
+                regexp.append("[^/]*");
+            }
+            else if (current == '?') {
+                regexp.append("[^/]");
+            }
+            else {
+                regexp.append(Pattern.quote(String.valueOf(current)));
+            }
+        }
+        return Pattern.compile(regexp.toString());
+    }
+
+
+    private static int indexOfJoker(String pattern) {
+        int star = pattern.indexOf('*');
+        int question = pattern.indexOf('?');
+        if (star < 0 || question < 0) {
+            return Math.max(star, question);
+        }
+        return Math.min(star, question);
+    }
+
+
+    private static String normalize(String path) {
+        return path.replace(File.separatorChar, '/');
+    }
+}
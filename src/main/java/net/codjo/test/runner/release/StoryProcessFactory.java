@@ -0,0 +1,14 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.IOException;
+/**
+ * Demarre le runner d'un test release.
+ */
+interface StoryProcessFactory {
+    Process start(File story) throws IOException;
+}
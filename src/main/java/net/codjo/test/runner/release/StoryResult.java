@@ -0,0 +1,72 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+/**
+ * Resultat de l'execution d'un test release dans son propre runner.
+ */
+class StoryResult {
+    private final File story;
+    private final int exitCode;
+    private final long durationMillis;
+    private final int attempt;
+    private final String outputTail;
+
+
+    StoryResult(File story, int exitCode, long durationMillis, int attempt) {
+        this(story, exitCode, durationMillis, attempt, "");
+    }
+
+
+    StoryResult(File story, int exitCode, long durationMillis, int attempt, String outputTail) {
+        this.story = story;
+        this.exitCode = exitCode;
+        this.durationMillis = durationMillis;
+        this.attempt = attempt;
+        this.outputTail = outputTail;
+    }
+
+
+    public File getStory() {
+        return story;
+    }
+
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+
+    /**
+     * @return 0 pour la premiere execution, puis le numero de la relance.
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+
+    public boolean isRetry() {
+        return attempt > 0;
+    }
+
+
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+
+
+    /**
+     * @return la fin de la sortie du runner si le test release est en echec, <code>null</code> sinon.
+     */
+    public String getFailureExcerpt() {
+        return (isSuccess() ? null : outputTail);
+    }
+}
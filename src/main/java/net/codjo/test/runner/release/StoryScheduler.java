@@ -0,0 +1,62 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.util.concurrent.Semaphore;
+/**
+ * Limite le nombre de runners de tests release executes en meme temps sur le poste, tous lancements confondus.
+ *
+ * <p> La limite vaut par defaut le nombre de processeurs ; elle peut etre fixee par la propriete systeme
+ * {@link #MAX_RUNNERS_PROPERTY} de l'IDE. </p>
+ *
+ * <p> Tous les runners passent par le scheduler : ceux des lots ({@link StoryBatchProcess}) et leurs runners
+ * pre-demarres, mais aussi le runner d'un test release seul ou d'un repertoire, lance comme un lot d'un seul element
+ * (relances du mode 'watch' comprises). </p>
+ */
+class StoryScheduler {
+    static final String MAX_RUNNERS_PROPERTY = "codjo.releaseTest.maxRunners";
+    private static final StoryScheduler INSTANCE = new StoryScheduler(
+          Integer.getInteger(MAX_RUNNERS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    private final int maxRunners;
+    private final Semaphore runners;
+
+
+    StoryScheduler(int maxRunners) {
+        this.maxRunners = Math.max(1, maxRunners);
+        this.runners = new Semaphore(this.maxRunners, true);
+    }
+
+
+    public static StoryScheduler getInstance() {
+        return INSTANCE;
+    }
+
+
+    public int getMaxRunners() {
+        return maxRunners;
+    }
+
+
+    /**
+     * Attend qu'un runner soit disponible. Chaque appel doit etre suivi d'un {@link #release()}.
+     */
+    public void acquire() throws InterruptedException {
+        runners.acquire();
+    }
+
+
+    /**
+     * @return <code>true</code> si un runner etait disponible ; l'appel doit alors etre suivi d'un
+     *         {@link #release()}.
+     */
+    public boolean tryAcquire() {
+        return runners.tryAcquire();
+    }
+
+
+    public void release() {
+        runners.release();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+/**
+ * Mesures relevees lors de la derniere execution d'un test release (pic de heap et part du temps passe en GC).
+ */
+class StoryTelemetry {
+    private final long heapPeakMb;
+    private final double gcOverhead;
+
+
+    StoryTelemetry(long heapPeakMb, double gcOverhead) {
+        this.heapPeakMb = heapPeakMb;
+        this.gcOverhead = gcOverhead;
+    }
+
+
+    public long getHeapPeakMb() {
+        return heapPeakMb;
+    }
+
+
+    /**
+     * @return la part (entre 0 et 1) du temps d'execution passe dans le GC.
+     */
+    public double getGcOverhead() {
+        return gcOverhead;
+    }
+}
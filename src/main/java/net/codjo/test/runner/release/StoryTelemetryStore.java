@@ -0,0 +1,69 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+/**
+ * Historique des mesures {@link StoryTelemetry} par test release, persiste dans un fichier properties.
+ */
+class StoryTelemetryStore {
+    private static final String HEAP_PEAK_SUFFIX = ".heapPeakMb";
+    private static final String GC_OVERHEAD_SUFFIX = ".gcOverhead";
+    private final File storeFile;
+    private final Properties properties = new Properties();
+
+
+    StoryTelemetryStore(File storeFile) throws IOException {
+        this.storeFile = storeFile;
+        if (storeFile.isFile()) {
+            InputStream inputStream = new FileInputStream(storeFile);
+            try {
+                properties.load(inputStream);
+            }
+            finally {
+                inputStream.close();
+            }
+        }
+    }
+
+
+    public StoryTelemetry get(String story) {
+        String heapPeak = properties.getProperty(story + HEAP_PEAK_SUFFIX);
+        String gcOverhead = properties.getProperty(story + GC_OVERHEAD_SUFFIX);
+        if (heapPeak == null || gcOverhead == null) {
+            return null;
+        }
+        try {
+            return new StoryTelemetry(Long.parseLong(heapPeak), Double.parseDouble(gcOverhead));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    public void put(String story, StoryTelemetry telemetry) {
+        properties.setProperty(story + HEAP_PEAK_SUFFIX, Long.toString(telemetry.getHeapPeakMb()));
+        properties.setProperty(story + GC_OVERHEAD_SUFFIX, Double.toString(telemetry.getGcOverhead()));
+    }
+
+
+    public void save() throws IOException {
+        storeFile.getParentFile().mkdirs();
+        OutputStream outputStream = new FileOutputStream(storeFile);
+        try {
+            properties.store(outputStream, "Release test telemetry");
+        }
+        finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import com.intellij.execution.ProgramRunnerUtil;
+import com.intellij.execution.RunManager;
+import com.intellij.execution.RunnerAndConfigurationSettings;
+import com.intellij.execution.executors.DefaultRunExecutor;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.execution.process.ProcessHandler;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileAdapter;
+import com.intellij.openapi.vfs.VirtualFileEvent;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.util.Alarm;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+/**
+ * Mode 'watch' d'un {@link ReleaseTestRunConfiguration} : relance les tests release impactes par chaque
+ * sauvegarde d'un fichier du perimetre de la configuration.
+ *
+ * <p> Les sauvegardes rapprochees sont regroupees (cf. {@link #DEBOUNCE_DELAY}). Un test release encore en cours
+ * d'execution est arrete avant d'etre relance. </p>
+ *
+ * <p> La recherche des tests release impactes (lecture du perimetre) se fait sur un thread du pool ; seuls l'arret
+ * et la relance des tests release repassent par le thread Swing. </p>
+ */
+class StoryWatcher extends VirtualFileAdapter implements Disposable {
+    static final int DEBOUNCE_DELAY = 500;
+    private final Logger logger = Logger.getInstance(StoryWatcher.class.getName());
+    private final ReleaseTestRunConfiguration configuration;
+    private final AffectedStoryResolver resolver;
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+    private final Set<File> changedFiles = new LinkedHashSet<File>();
+    private final Map<String, ProcessHandler> runningStories = new HashMap<String, ProcessHandler>();
+
+
+    StoryWatcher(ReleaseTestRunConfiguration configuration) {
+        this.configuration = configuration;
+        this.resolver = new AffectedStoryResolver(StoryIndexService.createStoryFinder(configuration.getProject()));
+    }
+
+
+    public void start() {
+        Disposer.register(configuration.getProject(), this);
+        VirtualFileManager.getInstance().addVirtualFileListener(this, this);
+    }
+
+
+    public void dispose() {
+        synchronized (changedFiles) {
+            changedFiles.clear();
+        }
+    }
+
+
+    @Override
+    public void contentsChanged(VirtualFileEvent event) {
+        fileChanged(event.getFile());
+    }
+
+
+    @Override
+    public void fileCreated(VirtualFileEvent event) {
+        fileChanged(event.getFile());
+    }
+
+
+    /**
+     * Appele par {@link ReleaseTestRunProfileState} au lancement d'un test release du perimetre.
+     */
+    public void storyStarted(String storyPath, ProcessHandler processHandler) {
+        final String story = new File(storyPath).getAbsolutePath();
+        synchronized (runningStories) {
+            runningStories.put(story, processHandler);
+        }
+        processHandler.addProcessListener(new ProcessAdapter() {
+            @Override
+            public void processTerminated(ProcessEvent event) {
+                synchronized (runningStories) {
+                    if (runningStories.get(story) == event.getProcessHandler()) {
+                        runningStories.remove(story);
+                    }
+                }
+            }
+        });
+    }
+
+
+    private void fileChanged(VirtualFile file) {
+        if (file.isDirectory() || !isInWatchedDirectory(file)) {
+            return;
+        }
+        synchronized (changedFiles) {
+            changedFiles.add(new File(file.getPath()));
+        }
+        alarm.cancelAllRequests();
+        alarm.addRequest(new Runnable() {
+            public void run() {
+                relaunchAffectedStories();
+            }
+        }, DEBOUNCE_DELAY);
+    }
+
+
+    private boolean isInWatchedDirectory(VirtualFile file) {
+        File scope = getScope();
+        File watchedDirectory = scope.isDirectory() ? scope : scope.getParentFile();
+        if (watchedDirectory == null) {
+            return false;
+        }
+        String directory = watchedDirectory.getAbsolutePath();
+        if (!directory.endsWith(File.separator)) {
+            directory += File.separator;
+        }
+        return new File(file.getPath()).getAbsolutePath().startsWith(directory);
+    }
+
+
+    private void relaunchAffectedStories() {
+        List<File> changes;
+        synchronized (changedFiles) {
+            changes = new ArrayList<File>(changedFiles);
+            changedFiles.clear();
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        final List<File> stories;
+        try {
+            stories = resolver.resolve(getScope(), changes);
+        }
+        catch (IOException e) {
+            logger.warn("Impossible de determiner les tests release impactes par " + changes, e);
+            return;
+        }
+        if (stories.isEmpty()) {
+            return;
+        }
+
+        logger.info("Watch mode : relance de " + stories + " suite a la modification de " + changes);
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            public void run() {
+                if (configuration.getProject().isDisposed()) {
+                    return;
+                }
+                for (File story : stories) {
+                    cancelRunningStory(story.getAbsolutePath());
+                    launch(story);
+                }
+            }
+        });
+    }
+
+
+    private void cancelRunningStory(String story) {
+        ProcessHandler processHandler;
+        synchronized (runningStories) {
+            processHandler = runningStories.remove(story);
+        }
+        if (processHandler != null && !processHandler.isProcessTerminated()) {
+            processHandler.destroyProcess();
+        }
+    }
+
+
+    private void launch(File story) {
+        Project project = configuration.getProject();
+        RunnerAndConfigurationSettings settings = RunManager.getInstance(project)
+              .createRunConfiguration("Story " + toStoryName(story), configuration.getFactory());
+
+        ReleaseTestRunConfiguration storyConfiguration = (ReleaseTestRunConfiguration)settings.getConfiguration();
+        storyConfiguration.copyOptionsFrom(configuration);
+        storyConfiguration.setReleaseTestFileName(story.getPath());
+        storyConfiguration.setStoryWatcher(this);
+
+        ProgramRunnerUtil.executeConfiguration(project, settings, DefaultRunExecutor.getRunExecutorInstance());
+    }
+
+
+    private static String toStoryName(File story) {
+        String name = story.getName();
+        int extension = name.lastIndexOf('.');
+        return (extension < 0 ? name : name.substring(0, extension));
+    }
+
+
+    private File getScope() {
+        return new File(configuration.getReleaseTestFileName());
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * Agent executant les tests release distribues par un {@link StoryCoordinator}, un runner a la fois.
+ *
+ * <p> Le runner est lance avec la ligne de commande envoyee par le coordinateur, le poste de l'agent devant donc
+ * disposer des memes chemins (JDK, classpath, tests release) que celui du coordinateur. Plusieurs agents peuvent
+ * tourner sur un meme poste. </p>
+ *
+ * <p> L'agent repond au battement du coordinateur, et s'arrete si celui-ci reste muet (cf.
+ * {@link StoryCoordinator#HEARTBEAT_MISSES}). </p>
+ *
+ * <p> Usage : <code>java -cp codjo-tools-test-runner.jar net.codjo.test.runner.release.StoryWorker host port
+ * jeton [nom]</code>, le jeton etant celui affiche par le coordinateur. </p>
+ */
+public class StoryWorker {
+    private final String host;
+    private final int port;
+    private final String token;
+    private final String name;
+    private StoryProcessFactory processFactory;
+    private Socket socket;
+    private DataOutputStream output;
+    private Process currentProcess;
+    private String currentStory;
+    private String cancelledStory;
+
+
+    public StoryWorker(String host, int port, String token, String name) {
+        this(host, port, token, name, null);
+    }
+
+
+    StoryWorker(String host, int port, String token, String name, StoryProcessFactory processFactory) {
+        this.host = host;
+        this.port = port;
+        this.token = token;
+        this.name = name;
+        this.processFactory = processFactory;
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: StoryWorker host port token [name]");
+            System.exit(2);
+        }
+        String name = (args.length > 3 ? args[3] : InetAddress.getLocalHost().getHostName());
+        new StoryWorker(args[0], Integer.parseInt(args[1]), args[2], name).run();
+    }
+
+
+    /**
+     * Execute les tests release du coordinateur jusqu'a son arret ou sa deconnexion.
+     */
+    public void run() throws IOException {
+        synchronized (this) {
+            socket = new Socket(host, port);
+        }
+        try {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output = new DataOutputStream(socket.getOutputStream());
+            send(StoryCoordinator.HELLO, name, token);
+            readCommand(input);
+            send(StoryCoordinator.NEXT);
+
+            while (true) {
+                String message = input.readUTF();
+                if (StoryCoordinator.RUN.equals(message)) {
+                    startStory(new File(input.readUTF()));
+                }
+                else if (StoryCoordinator.PING.equals(message)) {
+                    send(StoryCoordinator.PONG);
+                }
+                else if (StoryCoordinator.CANCEL.equals(message)) {
+                    cancelStory(input.readUTF());
+                }
+                else if (StoryCoordinator.STOP.equals(message)) {
+                    return;
+                }
+                else {
+                    throw new IOException("Message inattendu du coordinateur : " + message);
+                }
+            }
+        }
+        catch (IOException e) {
+            if (!socket.isClosed()) {
+                System.err.println("Connection to " + host + ":" + port + " lost: " + e);
+            }
+        }
+        finally {
+            cancelStory(currentStory);
+            stop();
+        }
+    }
+
+
+    /**
+     * Deconnecte l'agent : le coordinateur redistribue le test release en cours.
+     */
+    public synchronized void stop() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        catch (IOException e) {
+            // Deja ferme.
+        }
+    }
+
+
+    private void readCommand(DataInputStream input) throws IOException {
+        if (!StoryCoordinator.COMMAND.equals(input.readUTF())) {
+            throw new IOException("Reponse inattendue du coordinateur");
+        }
+        final List<String> command = new ArrayList<String>();
+        for (int count = input.readInt(); count > 0; count--) {
+            command.add(input.readUTF());
+        }
+        final File workingDirectory = new File(input.readUTF());
+        try {
+            socket.setSoTimeout(Integer.parseInt(input.readUTF()) * StoryCoordinator.HEARTBEAT_MISSES);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Reponse inattendue du coordinateur : " + e.getMessage());
+        }
+        if (processFactory == null) {
+            processFactory = new StoryProcessFactory() {
+                public Process start(File story) throws IOException {
+                    List<String> storyCommand = new ArrayList<String>(command);
+                    storyCommand.add(story.getPath());
+                    return new ProcessBuilder(storyCommand).directory(workingDirectory).start();
+                }
+            };
+        }
+    }
+
+
+    private void startStory(final File story) {
+        new Thread(new Runnable() {
+            public void run() {
+                runStory(story);
+            }
+        }, "ReleaseTest-Story").start();
+    }
+
+
+    private void runStory(File story) {
+        System.out.println("=== " + story.getName() + " ===");
+        OutputStream remoteOutput = new RemoteOutputStream();
+        long startTime = System.currentTimeMillis();
+        int exitCode;
+        try {
+            Process process = processFactory.start(story);
+            synchronized (this) {
+                currentProcess = process;
+                currentStory = story.getPath();
+                if (currentStory.equals(cancelledStory)) {
+                    process.destroy();
+                }
+            }
+            Thread outputPump = pump(process.getInputStream(), System.out, remoteOutput);
+            Thread errorPump = pump(process.getErrorStream(), System.err, remoteOutput);
+            exitCode = process.waitFor();
+            outputPump.join();
+            errorPump.join();
+        }
+        catch (IOException e) {
+            new PrintStream(remoteOutput, true).println("Impossible de lancer " + story + " : " + e);
+            exitCode = -1;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = -1;
+        }
+        finally {
+            synchronized (this) {
+                currentProcess = null;
+                currentStory = null;
+            }
+        }
+
+        long durationMillis = System.currentTimeMillis() - startTime;
+        System.out.println("=== " + story.getName() + (exitCode == 0 ? " OK" : " FAILED") + " (" + durationMillis
+                           + " ms) ===");
+        try {
+            send(StoryCoordinator.RESULT, exitCode, durationMillis);
+            send(StoryCoordinator.NEXT);
+        }
+        catch (IOException e) {
+            stop();
+        }
+    }
+
+
+    private synchronized void cancelStory(String story) {
+        if (currentProcess != null && currentStory.equals(story)) {
+            currentProcess.destroy();
+        }
+        else {
+            cancelledStory = story;
+        }
+    }
+
+
+    private synchronized void send(String message, Object... arguments) throws IOException {
+        output.writeUTF(message);
+        for (Object argument : arguments) {
+            if (argument instanceof Integer) {
+                output.writeInt((Integer)argument);
+            }
+            else if (argument instanceof Long) {
+                output.writeLong((Long)argument);
+            }
+            else if (argument instanceof byte[]) {
+                output.writeInt(((byte[])argument).length);
+                output.write((byte[])argument);
+            }
+            else {
+                output.writeUTF(String.valueOf(argument));
+            }
+        }
+        output.flush();
+    }
+
+
+    private static Thread pump(final InputStream from, final OutputStream to, final OutputStream remote) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                byte[] buffer = new byte[4096];
+                try {
+                    for (int read = from.read(buffer); read != -1; read = from.read(buffer)) {
+                        to.write(buffer, 0, read);
+                        remote.write(buffer, 0, read);
+                    }
+                }
+                catch (IOException e) {
+                    // Le runner a ete arrete : la fin de sa sortie est perdue.
+                }
+            }
+        }, "ReleaseTest-StoryOutput");
+        thread.start();
+        return thread;
+    }
+
+
+    /**
+     * Transmet la sortie du runner au coordinateur, au fil de l'eau ({@link StoryCoordinator#OUTPUT}). Une fois la
+     * connexion perdue, la sortie n'est plus transmise mais le runner continue d'etre lu.
+     */
+    private class RemoteOutputStream extends OutputStream {
+        private volatile boolean lost;
+
+
+        @Override
+        public void write(int value) {
+            write(new byte[]{(byte)value}, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            if (lost) {
+                return;
+            }
+            byte[] chunk = new byte[length];
+            System.arraycopy(bytes, offset, chunk, 0, length);
+            try {
+                send(StoryCoordinator.OUTPUT, chunk);
+            }
+            catch (IOException e) {
+                lost = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link AffectedStoryResolver}.
+ */
+public class AffectedStoryResolverTest extends TestCase {
+    private AffectedStoryResolver resolver;
+    private File directory;
+    private File storyA;
+    private File storyB;
+    private File dataset;
+
+
+    public void test_resolve_storyChanged() throws Exception {
+        assertEquals(Arrays.asList(storyB),
+                     resolver.resolve(directory, Arrays.asList(storyB)));
+    }
+
+
+    public void test_resolve_datasetChanged() throws Exception {
+        assertEquals(Arrays.asList(storyA),
+                     resolver.resolve(directory, Arrays.asList(dataset)));
+    }
+
+
+    public void test_resolve_outOfScope() throws Exception {
+        assertEquals(Collections.<File>emptyList(),
+                     resolver.resolve(storyB, Arrays.asList(dataset)));
+        assertEquals(Collections.<File>emptyList(),
+                     resolver.resolve(directory, Arrays.asList(new File(directory, "unknown.txt"))));
+    }
+
+
+    public void test_resolve_noDuplicate() throws Exception {
+        assertEquals(Arrays.asList(storyA),
+                     resolver.resolve(directory, Arrays.asList(storyA, dataset)));
+    }
+
+
+    public void test_resolve_wholeNameOnly() throws Exception {
+        File storyC = write("StoryC.xml", "<release-test name='C'><tokio-load id='load' file=\"data/A.tokio\"/>");
+        try {
+            assertEquals(Arrays.asList(storyC),
+                         resolver.resolve(directory, Arrays.asList(new File(directory, "data/A.tokio"))));
+        }
+        finally {
+            storyC.delete();
+        }
+    }
+
+
+    public void test_toReferencePattern() throws Exception {
+        assertTrue(AffectedStoryResolver.toReferencePattern("A.tokio").matcher("file='A.tokio'").find());
+        assertTrue(AffectedStoryResolver.toReferencePattern("A.tokio").matcher("file=\"c:\\data\\A.tokio\"").find());
+        assertTrue(AffectedStoryResolver.toReferencePattern("A.tokio").matcher("<file>A.tokio</file>").find());
+        assertFalse(AffectedStoryResolver.toReferencePattern("A.tokio").matcher("file='StoryA.tokio'").find());
+        assertFalse(AffectedStoryResolver.toReferencePattern("A.tokio").matcher("file='A.tokio.bak'").find());
+        assertFalse(AffectedStoryResolver.toReferencePattern("A.tokio").matcher("file='AxTokio'").find());
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        resolver = new AffectedStoryResolver(new StoryFinder());
+        directory = new File(System.getProperty("java.io.tmpdir"), "affectedStoryResolver");
+        directory.mkdirs();
+        storyA = write("StoryA.xml", "<release-test name='A'><tokio-load id='load' file='StoryA.tokio'/>");
+        storyB = write("StoryB.xml", "<release-test name='B'><client user='pims'/>");
+        dataset = write("StoryA.tokio", "<Scenarii/>");
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        storyA.delete();
+        storyB.delete();
+        dataset.delete();
+        directory.delete();
+    }
+
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link ClasspathImpactAnalyzer}.
+ */
+public class ClasspathImpactAnalyzerTest extends TestCase {
+    private File directory;
+    private File jar;
+    private File classes;
+    private File storeFile;
+    private File storyA;
+    private File storyB;
+    private ClasspathFingerprinter fingerprinter;
+
+
+    public void test_selectChangedSinceLastGreen() throws Exception {
+        List<String> classPath = Arrays.asList(jar.getPath(), classes.getPath());
+        Map<String, String> fingerprints = fingerprinter.fingerprint(classPath);
+
+        StoryFingerprintStore store = new StoryFingerprintStore(storeFile);
+        store.recordGreen(storyA.getAbsolutePath(), fingerprints);
+        store.save();
+
+        store = new StoryFingerprintStore(storeFile);
+        Map<File, List<String>> selection = new ClasspathImpactAnalyzer(store)
+              .selectChangedSinceLastGreen(Arrays.asList(storyA, storyB), fingerprints);
+        assertEquals(Collections.singletonMap(storyB, Collections.<String>emptyList()), selection);
+
+        write(jar, "jar content v2");
+        selection = new ClasspathImpactAnalyzer(store)
+              .selectChangedSinceLastGreen(Arrays.asList(storyA), fingerprinter.fingerprint(classPath));
+        assertEquals(Collections.singletonMap(storyA, Arrays.asList(jar.getPath())), selection);
+    }
+
+
+    public void test_changedEntries() throws Exception {
+        Map<String, String> before = fingerprinter.fingerprint(Arrays.asList(jar.getPath(), classes.getPath()));
+        write(new File(classes, "Added.class"), "new class");
+        Map<String, String> after = fingerprinter.fingerprint(Arrays.asList(classes.getPath(), "unknown.jar"));
+
+        assertEquals(Arrays.asList(classes.getPath(), "unknown.jar", jar.getPath()),
+                     ClasspathFingerprinter.changedEntries(before, after));
+        assertEquals(ClasspathFingerprinter.MISSING, after.get("unknown.jar"));
+    }
+
+
+    public void test_fingerprint_jarDigestCached() throws Exception {
+        StoryFingerprintStore store = new StoryFingerprintStore(storeFile);
+        String digest = new ClasspathFingerprinter(store, null).fingerprint(jar);
+        assertEquals(fingerprinter.fingerprint(jar), digest);
+        store.save();
+
+        store = new StoryFingerprintStore(storeFile);
+        long lastModified = jar.lastModified();
+        write(jar, "jar content v2");
+        jar.setLastModified(lastModified);
+        assertEquals(digest, new ClasspathFingerprinter(store, null).fingerprint(jar));
+
+        jar.setLastModified(lastModified + 2000);
+        assertEquals(fingerprinter.fingerprint(jar), new ClasspathFingerprinter(store, null).fingerprint(jar));
+        assertFalse(digest.equals(fingerprinter.fingerprint(jar)));
+    }
+
+
+    public void test_fingerprint_sdkEntry() throws Exception {
+        ClasspathFingerprinter sdkFingerprinter = new ClasspathFingerprinter(null, directory);
+
+        assertEquals("sdk:" + jar.length() + ":" + jar.lastModified(), sdkFingerprinter.fingerprint(jar));
+        assertEquals(fingerprinter.fingerprint(classes), sdkFingerprinter.fingerprint(classes));
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        fingerprinter = new ClasspathFingerprinter();
+        directory = new File(System.getProperty("java.io.tmpdir"), "classpathImpactAnalyzer");
+        classes = new File(directory, "classes");
+        classes.mkdirs();
+        jar = write(new File(directory, "lib.jar"), "jar content v1");
+        write(new File(classes, "Existing.class"), "existing class");
+        storeFile = new File(directory, "fingerprints.properties");
+        storyA = new File(directory, "StoryA.xml");
+        storyB = new File(directory, "StoryB.xml");
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(classes, "Existing.class").delete();
+        new File(classes, "Added.class").delete();
+        classes.delete();
+        jar.delete();
+        storeFile.delete();
+        directory.delete();
+    }
+
+
+    private static File write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+}
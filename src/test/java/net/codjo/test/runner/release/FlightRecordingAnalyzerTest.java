@@ -0,0 +1,187 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.StringReader;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link FlightRecordingAnalyzer}.
+ */
+public class FlightRecordingAnalyzerTest extends TestCase {
+    private static final String RECORDING
+          = "jdk.ExecutionSample {\n"
+            + "  startTime = 19:57:46.184\n"
+            + "  sampledThread = \"main\" (javaThreadId = 1)\n"
+            + "  stackTrace = [\n"
+            + "    java.util.HashMap.hash(Object) line: 338\n"
+            + "    net.codjo.test.release.task.tokio.TokioLoadTask.execute() line: 52\n"
+            + "    ...\n"
+            + "  ]\n"
+            + "}\n"
+            + "\n"
+            + "jdk.ExecutionSample {\n"
+            + "  stackTrace = [\n"
+            + "    java.util.HashMap.hash(Object) line: 338\n"
+            + "    net.codjo.test.release.task.jms.ListenJmsTask.execute() line: 12\n"
+            + "  ]\n"
+            + "}\n"
+            + "\n"
+            + "jdk.ExecutionSample {\n"
+            + "  stackTrace = [\n"
+            + "    java.lang.String.indexOf(int) line: 10\n"
+            + "  ]\n"
+            + "}\n"
+            + "\n"
+            + "jdk.ExecutionSample {\n"
+            + "  stackTrace = [\n"
+            + "    com.agf.test.release.task.ClientTask.send() line: 20\n"
+            + "  ]\n"
+            + "}\n"
+            + "\n"
+            + "jdk.ObjectAllocationSample {\n"
+            + "  objectClass = byte[] (classLoader = bootstrap)\n"
+            + "  weight = 2.0 MB\n"
+            + "  stackTrace = [\n"
+            + "    java.lang.Integer.toString(int) line: 458\n"
+            + "  ]\n"
+            + "}\n"
+            + "\n"
+            + "jdk.JavaMonitorEnter {\n"
+            + "  duration = 11.6 ms\n"
+            + "  monitorClass = java.lang.Object (classLoader = bootstrap)\n"
+            + "  stackTrace = [\n"
+            + "    Busy.main(String[]) line: 6\n"
+            + "  ]\n"
+            + "}\n"
+            + "\n"
+            + "jdk.GarbageCollection {\n"
+            + "  duration = 3.00 ms\n"
+            + "  name = \"G1New\"\n"
+            + "  sumOfPauses = 3.00 ms\n"
+            + "  longestPause = 2.00 ms\n"
+            + "}\n"
+            + "\n"
+            + "jdk.GarbageCollection {\n"
+            + "  duration = 1.00 s\n"
+            + "  sumOfPauses = 1.00 s\n"
+            + "  longestPause = 1.00 s\n"
+            + "}\n";
+
+
+    public void test_toReport_cpu() throws Exception {
+        FlightRecordingAnalyzer analyzer = new FlightRecordingAnalyzer();
+        analyzer.parse(new StringReader(RECORDING));
+        String report = analyzer.toReport("MyStory");
+
+        assertTrue(report, report.startsWith("\nProfile of MyStory\nTop CPU methods (4 samples):\n"));
+        assertTrue(report, report.contains("50.0%  java.util.HashMap.hash(Object)"));
+        assertTrue(report, report.contains("25.0%  java.lang.String.indexOf(int)"));
+    }
+
+
+    public void test_toReport_sections() throws Exception {
+        FlightRecordingAnalyzer analyzer = new FlightRecordingAnalyzer();
+        analyzer.parse(new StringReader(RECORDING));
+        String report = analyzer.toReport("MyStory");
+
+        assertTrue(report, report.contains("2.0 MB  byte[] at java.lang.Integer.toString(int)"));
+        assertTrue(report, report.contains("11 ms  java.lang.Object at Busy.main(String[])"));
+        assertTrue(report, report.contains("GC pauses: 2, total 1003 ms, max 1000 ms"));
+        assertTrue(report, report.contains("CPU by step: not available, the recording has no ReleaseTestStep events"));
+    }
+
+
+    public void test_toReport_steps() throws Exception {
+        FlightRecordingAnalyzer analyzer = new FlightRecordingAnalyzer();
+        analyzer.parse(new StringReader(step("tokio-load", "main", "19:57:46.000", "100 ms")
+                                        + step("listen-jms", "jms", "19:57:46.000", "1.00 s")
+                                        + step("client", "main", "19:57:46.200", "300 ms")
+                                        + step("tokio-assert", "main", "19:57:46.300", "50.0 ms")
+                                        + sample("main", "19:57:46.050")
+                                        + sample("jms", "19:57:46.050 (2026-10-19)")
+                                        + sample("main", "19:57:46.150")
+                                        + sample("main", "19:57:46.250")
+                                        + sample("main", "19:57:46.320")));
+        String report = analyzer.toReport("MyStory");
+
+        assertTrue(report, report.contains("CPU by step:\n"
+                                           + "  tokio-load    20.0%\n"
+                                           + "  listen-jms    20.0%\n"
+                                           + "  client        20.0%\n"
+                                           + "  tokio-assert  20.0%\n"
+                                           + "  other         20.0%\n"));
+    }
+
+
+    public void test_toReport_tlabAllocations() throws Exception {
+        FlightRecordingAnalyzer analyzer = new FlightRecordingAnalyzer();
+        analyzer.parse(new StringReader("jdk.ObjectAllocationInNewTLAB {\n"
+                                        + "  objectClass = char[] (classLoader = bootstrap)\n"
+                                        + "  allocationSize = 24 bytes\n"
+                                        + "  tlabSize = 1.0 MB\n"
+                                        + "  stackTrace = [\n"
+                                        + "    java.lang.StringBuilder.<init>() line: 3\n"
+                                        + "  ]\n"
+                                        + "}\n"
+                                        + "\n"
+                                        + "jdk.ObjectAllocationOutsideTLAB {\n"
+                                        + "  objectClass = byte[] (classLoader = bootstrap)\n"
+                                        + "  allocationSize = 3.0 MB\n"
+                                        + "  stackTrace = [\n"
+                                        + "    Loader.read() line: 7\n"
+                                        + "  ]\n"
+                                        + "}\n"));
+        String report = analyzer.toReport("MyStory");
+
+        assertTrue(report, report.contains("3.0 MB  byte[] at Loader.read()"));
+        assertTrue(report, report.contains("1.0 MB  char[] at java.lang.StringBuilder.<init>()"));
+    }
+
+
+    public void test_toReport_sampledAllocationsPreferred() throws Exception {
+        FlightRecordingAnalyzer analyzer = new FlightRecordingAnalyzer();
+        analyzer.parse(new StringReader(RECORDING + "\n"
+                                        + "jdk.ObjectAllocationOutsideTLAB {\n"
+                                        + "  objectClass = byte[] (classLoader = bootstrap)\n"
+                                        + "  allocationSize = 3.0 MB\n"
+                                        + "}\n"));
+        String report = analyzer.toReport("MyStory");
+
+        assertTrue(report, report.contains("2.0 MB  byte[] at java.lang.Integer.toString(int)"));
+        assertFalse(report, report.contains("3.0 MB"));
+    }
+
+
+    public void test_quantities() throws Exception {
+        assertEquals(1536, FlightRecordingAnalyzer.toBytes("1.5 kB"));
+        assertEquals(512, FlightRecordingAnalyzer.toBytes("512 bytes"));
+        assertEquals(1500000, FlightRecordingAnalyzer.toNanos("1.5 ms"));
+        assertEquals(2000000000, FlightRecordingAnalyzer.toNanos("2 s"));
+        assertEquals(0, FlightRecordingAnalyzer.toNanos(null));
+        assertEquals(71866184, FlightRecordingAnalyzer.toMillisOfDay("19:57:46.184 (2026-10-19)"));
+        assertEquals(-1, FlightRecordingAnalyzer.toMillisOfDay(null));
+    }
+
+
+    private static String step(String name, String thread, String startTime, String duration) {
+        return "net.codjo.test.release.ReleaseTestStep {\n"
+               + "  startTime = " + startTime + "\n"
+               + "  duration = " + duration + "\n"
+               + "  eventThread = \"" + thread + "\" (javaThreadId = 1)\n"
+               + "  name = \"" + name + "\"\n"
+               + "}\n\n";
+    }
+
+
+    private static String sample(String thread, String startTime) {
+        return "jdk.ExecutionSample {\n"
+               + "  startTime = " + startTime + "\n"
+               + "  sampledThread = \"" + thread + "\" (javaThreadId = 1)\n"
+               + "  stackTrace = [\n"
+               + "    java.lang.Thread.run() line: 1\n"
+               + "  ]\n"
+               + "}\n\n";
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.StringReader;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link GcLogParser}.
+ */
+public class GcLogParserTest extends TestCase {
+    private GcLogParser parser;
+
+
+    public void test_parse_legacyFormat() throws Exception {
+        StoryTelemetry telemetry = parser.parse(new StringReader(
+              "0.123: [GC 15744K->2592K(60352K), 0.0500000 secs]\n"
+              + "1.456: [Full GC 204800K->102400K(262144K), 0.1500000 secs]\n"), 1000);
+
+        assertEquals(200, telemetry.getHeapPeakMb());
+        assertEquals(0.2, telemetry.getGcOverhead(), 0.0001);
+    }
+
+
+    public void test_parse_unifiedFormat() throws Exception {
+        StoryTelemetry telemetry = parser.parse(new StringReader(
+              "[0.015s][info][gc] GC(0) Pause Young (Normal) (G1 Evacuation Pause) 23M->4M(256M) 10.000ms\n"
+              + "[0.045s][info][gc] GC(1) Pause Full (System.gc()) 1G->40M(1G) 90.000ms\n"), 1000);
+
+        assertEquals(1024, telemetry.getHeapPeakMb());
+        assertEquals(0.1, telemetry.getGcOverhead(), 0.0001);
+    }
+
+
+    public void test_parse_noCollection() throws Exception {
+        assertNull(parser.parse(new StringReader("nothing to see\n"), 1000));
+        assertNull(parser.parse(new File("unknown.gc.log"), 1000));
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        parser = new GcLogParser();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link JvmOptionTuner}.
+ */
+public class JvmOptionTunerTest extends TestCase {
+    private JvmOptionTuner tuner;
+
+
+    public void test_tune_noTelemetry() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(null, null);
+
+        assertEquals(Collections.<String>emptyList(), tuning.getOptions());
+        assertEquals(1, tuning.getReasons().size());
+    }
+
+
+    public void test_tune_smallHeap() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(100, 0.02), null);
+
+        assertEquals(Arrays.asList("-Xmx192m", "-Xms128m", "-XX:+UseSerialGC"), tuning.getOptions());
+    }
+
+
+    public void test_tune_highGcOverhead() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(400, 0.25), null);
+
+        assertEquals(Arrays.asList("-Xmx640m", "-Xms448m", "-XX:+UseParallelGC"), tuning.getOptions());
+        assertEquals("-XX:+UseParallelGC: GC overhead was 25%", tuning.getReasons().get(2));
+    }
+
+
+    public void test_tune_minimumHeap() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(10, 0.01), null);
+
+        assertEquals(Arrays.asList("-Xmx128m", "-Xms64m", "-XX:+UseSerialGC"), tuning.getOptions());
+    }
+
+
+    public void test_tune_userParametersWin() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(400, 0.25),
+                                                  new String[]{"-Xmx1g", "-XX:+UseG1GC", "-Dfoo=bar"});
+
+        assertEquals(Arrays.asList("-Xms448m"), tuning.getOptions());
+        assertEquals("GC settings set by user (-XX:+UseG1GC), kept: no GC choice and no GC log added, telemetry not"
+                     + " recorded", tuning.getReasons().get(0));
+        assertEquals("-Xmx set by user, kept", tuning.getReasons().get(1));
+        assertEquals(3, tuning.getReasons().size());
+        assertFalse(tuning.isGcLogEnabled());
+    }
+
+
+    public void test_tune_userGcSettings() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(100, 0.02),
+                                                  new String[]{"-XX:+UseConcMarkSweepGC", "-XX:-UseParNewGC"});
+
+        assertEquals(Arrays.asList("-Xmx192m", "-Xms128m"), tuning.getOptions());
+        assertTrue(tuning.getReasons().get(0),
+                   tuning.getReasons().get(0).startsWith("GC settings set by user (-XX:+UseConcMarkSweepGC"
+                                                         + " -XX:-UseParNewGC), kept"));
+        assertFalse(tuning.isGcLogEnabled());
+
+        tuning = tuner.tune(null, new String[]{"-verbose:gc"});
+        assertEquals(Collections.<String>emptyList(), tuning.getOptions());
+        assertFalse(tuning.isGcLogEnabled());
+
+        assertTrue(tuner.tune(new StoryTelemetry(100, 0.02), new String[]{"-Xmx1g"}).isGcLogEnabled());
+    }
+
+
+    public void test_isGcParameter() throws Exception {
+        for (String parameter : new String[]{"-XX:+UseParallelOldGC", "-XX:-UseParNewGC", "-XX:ParallelGCThreads=4",
+                                             "-XX:CMSInitiatingOccupancyFraction=70", "-XX:G1HeapRegionSize=4m",
+                                             "-XX:+PrintGCDetails", "-Xloggc:gc.log", "-Xlog:gc*:file=gc.log",
+                                             "-Xlog:safepoint,gc+heap=debug", "-verbose:gc"}) {
+            assertTrue(parameter, JvmOptionTuner.isGcParameter(parameter));
+        }
+        for (String parameter : new String[]{"-Xmx1g", "-XX:+HeapDumpOnOutOfMemoryError", "-Xlog:safepoint",
+                                             "-verbose:class", "-Dgc=true"}) {
+            assertFalse(parameter, JvmOptionTuner.isGcParameter(parameter));
+        }
+    }
+
+
+    public void test_tune_initialHeapCappedByUserMaxHeap() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(400, 0.02), new String[]{"-Xmx256m"});
+
+        assertEquals(Arrays.asList("-Xms256m"), tuning.getOptions());
+        assertEquals("-Xms256m: capped to -Xmx256m set by user", tuning.getReasons().get(1));
+    }
+
+
+    public void test_tune_unreadableUserMaxHeap() throws Exception {
+        JvmOptionTuner.Tuning tuning = tuner.tune(new StoryTelemetry(400, 0.02), new String[]{"-Xmx"});
+
+        assertEquals(Collections.<String>emptyList(), tuning.getOptions());
+        assertEquals("-Xms not set: -Xmx set by user could not be read", tuning.getReasons().get(1));
+    }
+
+
+    public void test_toMegaBytes() throws Exception {
+        assertEquals(2048, JvmOptionTuner.toMegaBytes("2G"));
+        assertEquals(256, JvmOptionTuner.toMegaBytes("256m"));
+        assertEquals(512, JvmOptionTuner.toMegaBytes("524288k"));
+        assertEquals(64, JvmOptionTuner.toMegaBytes("67108864"));
+        assertEquals(-1, JvmOptionTuner.toMegaBytes("512k"));
+        assertEquals(-1, JvmOptionTuner.toMegaBytes("abc"));
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        tuner = new JvmOptionTuner();
+    }
+}
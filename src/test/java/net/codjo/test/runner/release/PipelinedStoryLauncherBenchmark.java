@@ -0,0 +1,87 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+/**
+ * Mesure le delai entre la demande de lancement d'un test release et le debut de son execution, avec un runner
+ * demarre a la demande (comportement precedent) et avec {@link PipelinedStoryLauncher}.
+ *
+ * <p> Les runners sont des {@link PipelinedStoryLauncherTest.FakeRunner} : la mesure porte sur le demarrage de la
+ * JVM, pas sur la construction des <code>JavaParameters</code> ni sur le chargement des classes d'un vrai runner.
+ * Hors des tests unitaires (mesure sensible a la charge du poste), a lancer a la main avec le classpath de test :
+ * <code>java net.codjo.test.runner.release.PipelinedStoryLauncherBenchmark [nombreDeTestsRelease]</code>. </p>
+ */
+public final class PipelinedStoryLauncherBenchmark {
+    private PipelinedStoryLauncherBenchmark() {
+    }
+
+
+    public static void main(String[] args) throws Exception {
+        List<File> stories = new ArrayList<File>();
+        int storyCount = (args.length > 0 ? Integer.parseInt(args[0]) : 10);
+        for (int i = 1; i <= storyCount; i++) {
+            stories.add(new File("Story" + i + ".xml"));
+        }
+
+        final PipelinedStoryLauncher.CommandFactory commandFactory = new PipelinedStoryLauncher.CommandFactory() {
+            public List<String> createCommand(File story) {
+                List<String> command = new ArrayList<String>();
+                command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(StoryLauncher.class.getName());
+                command.add(PipelinedStoryLauncherTest.FakeRunner.class.getName());
+                return command;
+            }
+        };
+        long onDemandLatency = measureHandOverLatency(stories, new StoryProcessFactory() {
+            public Process start(File story) throws IOException {
+                List<String> command = new ArrayList<String>(commandFactory.createCommand(story));
+                command.remove(StoryLauncher.class.getName());
+                command.add(story.getPath());
+                return new ProcessBuilder(command).start();
+            }
+        });
+
+        PipelinedStoryLauncher launcher = new PipelinedStoryLauncher(stories, new File("."), commandFactory);
+        launcher.setScheduler(new StoryScheduler(2));
+        launcher.open();
+        long pipelinedLatency;
+        try {
+            pipelinedLatency = measureHandOverLatency(stories, launcher);
+        }
+        finally {
+            launcher.close();
+        }
+
+        System.out.println("Hand-off latency over " + (stories.size() - 1) + " stories: on demand "
+                           + onDemandLatency + " ms, pipelined " + pipelinedLatency + " ms");
+    }
+
+
+    /**
+     * @return le delai moyen, hors premier test release, entre le lancement et la premiere ligne du runner.
+     */
+    private static long measureHandOverLatency(List<File> stories, StoryProcessFactory processFactory)
+          throws Exception {
+        long totalLatency = 0;
+        for (int i = 0; i < stories.size(); i++) {
+            long startTime = System.currentTimeMillis();
+            Process process = processFactory.start(stories.get(i));
+            new BufferedReader(new InputStreamReader(process.getInputStream())).readLine();
+            if (i > 0) {
+                totalLatency += System.currentTimeMillis() - startTime;
+            }
+            process.waitFor();
+        }
+        return totalLatency / (stories.size() - 1);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link PipelinedStoryLauncher} et {@link StoryLauncher}, avec de vrais runners.
+ */
+public class PipelinedStoryLauncherTest extends TestCase {
+    static final int STORY_DURATION = 300;
+    private final List<File> stories = Arrays.asList(new File("Story1.xml"), new File("Story2.xml"),
+                                                     new File("Story3.xml"), new File("Story4.xml"),
+                                                     new File("Story5.xml"));
+    private final List<File> preparedStories = new ArrayList<File>();
+    private PipelinedStoryLauncher launcher;
+
+
+    public void test_start_handsOverToIdleRunner() throws Exception {
+        launcher = createLauncher(false);
+        launcher.open();
+        waitForIdleRunner();
+
+        Process process = launcher.start(stories.get(0));
+
+        assertEquals("started -verbose Story1.xml", readFirstLine(process));
+        assertEquals(0, process.waitFor());
+        assertTrue(preparedStories.containsAll(stories.subList(0, 1 + PipelinedStoryLauncher.PREPARE_AHEAD)));
+    }
+
+
+    public void test_start_unexpectedStory() throws Exception {
+        launcher = createLauncher(true);
+        launcher.open();
+        waitForIdleRunner();
+
+        Process process = launcher.start(stories.get(3));
+
+        assertEquals("started Story4.xml -verbose Story4.xml", readFirstLine(process));
+        assertEquals(0, process.waitFor());
+        waitForIdleRunner();
+        process = launcher.start(stories.get(0));
+        assertEquals("started Story1.xml -verbose Story1.xml", readFirstLine(process));
+        assertEquals(0, process.waitFor());
+    }
+
+
+    public void test_close_destroysIdleRunner() throws Exception {
+        launcher = createLauncher(false);
+        launcher.open();
+        waitForIdleRunner();
+
+        launcher.close();
+
+        assertFalse(launcher.hasIdleRunner());
+        try {
+            launcher.start(stories.get(0));
+            fail();
+        }
+        catch (IOException e) {
+            assertEquals("Le lanceur est arrete", e.getMessage());
+        }
+    }
+
+
+    public void test_idleRunner_disabled() throws Exception {
+        launcher = createLauncher(false);
+        launcher.setIdleRunnerEnabled(false);
+        launcher.open();
+        Thread.sleep(300);
+
+        assertFalse(launcher.hasIdleRunner());
+        Process process = launcher.start(stories.get(0));
+        assertEquals("started -verbose Story1.xml", readFirstLine(process));
+        assertEquals(0, process.waitFor());
+        assertFalse(launcher.hasIdleRunner());
+    }
+
+
+    public void test_idleRunner_takesSchedulerSlot() throws Exception {
+        StoryScheduler scheduler = new StoryScheduler(1);
+        launcher = createLauncher(false);
+        launcher.setScheduler(scheduler);
+        launcher.open();
+        waitForIdleRunner();
+        assertFalse(scheduler.tryAcquire());
+
+        Process process = launcher.start(stories.get(0));
+        assertEquals(0, process.waitFor());
+        waitForIdleRunner();
+        assertFalse(scheduler.tryAcquire());
+
+        launcher.close();
+        assertTrue(scheduler.tryAcquire());
+    }
+
+
+    public void test_idleRunner_noFreeSlot() throws Exception {
+        StoryScheduler scheduler = new StoryScheduler(1);
+        scheduler.acquire();
+        launcher = createLauncher(false);
+        launcher.setScheduler(scheduler);
+        launcher.open();
+        Thread.sleep(300);
+
+        assertFalse(launcher.hasIdleRunner());
+        scheduler.release();
+    }
+
+
+    public void test_claimSlot() throws Exception {
+        StoryScheduler scheduler = new StoryScheduler(1);
+        launcher = createLauncher(false);
+        launcher.setScheduler(scheduler);
+        launcher.open();
+
+        assertTrue(launcher.claimSlot(stories.get(0)));
+        Process process = launcher.start(stories.get(0));
+        assertEquals(0, process.waitFor());
+        assertFalse(scheduler.tryAcquire());
+    }
+
+
+    public void test_claimSlot_otherStory() throws Exception {
+        StoryScheduler scheduler = new StoryScheduler(1);
+        launcher = createLauncher(false);
+        launcher.setScheduler(scheduler);
+        launcher.open();
+        waitForIdleRunner();
+
+        assertFalse(launcher.claimSlot(stories.get(2)));
+        assertFalse(launcher.hasIdleRunner());
+        assertTrue(scheduler.tryAcquire());
+    }
+
+
+    public void test_batch_singleSlot() throws Exception {
+        StoryScheduler scheduler = new StoryScheduler(1);
+        launcher = createLauncher(false);
+        launcher.setScheduler(scheduler);
+        StoryBatchProcess process = new StoryBatchProcess(stories, launcher);
+        process.setScheduler(scheduler);
+        process.addStoryListener(launcher);
+        launcher.open();
+        process.start();
+
+        for (int i = 0; i < 100 && isRunning(process); i++) {
+            Thread.sleep(100);
+        }
+        if (isRunning(process)) {
+            process.destroy();
+            fail("Lot bloque en attente d'une place");
+        }
+        assertEquals(0, process.exitValue());
+        launcher.close();
+        assertTrue(scheduler.tryAcquire());
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (launcher != null) {
+            launcher.close();
+        }
+    }
+
+
+    private PipelinedStoryLauncher createLauncher(boolean commandPerStory) {
+        return new PipelinedStoryLauncher(stories, new File("."), createCommandFactory(commandPerStory));
+    }
+
+
+    private PipelinedStoryLauncher.CommandFactory createCommandFactory(final boolean commandPerStory) {
+        return new PipelinedStoryLauncher.CommandFactory() {
+            public List<String> createCommand(File story) {
+                synchronized (preparedStories) {
+                    preparedStories.add(story);
+                }
+                List<String> command = new ArrayList<String>();
+                command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(StoryLauncher.class.getName());
+                command.add(FakeRunner.class.getName());
+                if (commandPerStory) {
+                    command.add(story.getName());
+                }
+                command.add("-verbose");
+                return command;
+            }
+        };
+    }
+
+
+    private void waitForIdleRunner() throws InterruptedException {
+        for (int i = 0; i < 100 && !launcher.hasIdleRunner(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(launcher.hasIdleRunner());
+    }
+
+
+    private static boolean isRunning(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        }
+        catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+
+    private static String readFirstLine(Process process) throws IOException {
+        return new BufferedReader(new InputStreamReader(process.getInputStream())).readLine();
+    }
+
+
+    /**
+     * Runner qui affiche ses arguments puis simule l'execution d'un test release.
+     */
+    public static class FakeRunner {
+        public static void main(String[] args) throws InterruptedException {
+            StringBuilder line = new StringBuilder("started");
+            for (String arg : args) {
+                line.append(' ').append(arg);
+            }
+            System.out.println(line);
+            System.out.flush();
+            Thread.sleep(STORY_DURATION);
+        }
+    }
+}
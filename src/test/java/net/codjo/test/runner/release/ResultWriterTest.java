@@ -0,0 +1,128 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+/**
+ * Classe de test de {@link JUnitXmlResultWriter}, {@link JsonLinesResultWriter} et {@link OutputTail}.
+ */
+public class ResultWriterTest extends TestCase {
+    private File directory;
+    private File storyA;
+    private File storyB;
+
+
+    public void test_junitXml_validAfterEachResult() throws Exception {
+        File reportFile = new File(directory, "reports/result.xml");
+        JUnitXmlResultWriter writer = new JUnitXmlResultWriter(reportFile, "My \"suite\"", directory);
+
+        Element suite = parse(reportFile);
+        assertEquals("My \"suite\"", suite.getAttribute("name"));
+        assertEquals("0", suite.getAttribute("tests"));
+
+        writer.storyFinished(new StoryResult(storyA, 0, 1500, 0));
+        suite = parse(reportFile);
+        assertEquals("1", suite.getAttribute("tests"));
+        assertEquals("0", suite.getAttribute("failures"));
+        assertEquals("1.500", suite.getAttribute("time"));
+
+        writer.storyFinished(new StoryResult(storyB, 2, 500, 1, "line 1\nassertion <failed> & \u0001stopped\n"));
+        writer.close();
+
+        suite = parse(reportFile);
+        assertEquals("2", suite.getAttribute("tests"));
+        assertEquals("1", suite.getAttribute("failures"));
+        assertEquals("2.000", suite.getAttribute("time"));
+        Element failed = (Element)suite.getElementsByTagName("testcase").item(1);
+        assertEquals("batch.daily", failed.getAttribute("classname"));
+        assertEquals("StoryB.xml (retry 1)", failed.getAttribute("name"));
+        Element failure = (Element)failed.getElementsByTagName("failure").item(0);
+        assertEquals("Exit code 2", failure.getAttribute("message"));
+        assertEquals("line 1\nassertion <failed> & stopped\n", failure.getTextContent());
+    }
+
+
+    public void test_jsonLines() throws Exception {
+        File reportFile = new File(directory, "reports/result.ndjson");
+        JsonLinesResultWriter writer = new JsonLinesResultWriter(reportFile);
+        writer.storyFinished(new StoryResult(storyA, 0, 1500, 0, "ignored"));
+        writer.storyFinished(new StoryResult(storyB, 1, 20, 0, "say \"no\"\n\tat \\here"));
+
+        List<String> lines = readLines(reportFile);
+        writer.close();
+
+        assertEquals(2, lines.size());
+        assertEquals("{\"name\":\"StoryA.xml\",\"path\":" + JsonLinesResultWriter.quote(storyA.getPath())
+                     + ",\"status\":\"passed\",\"exitCode\":0,\"durationMillis\":1500,\"attempt\":0}",
+                     lines.get(0));
+        assertTrue(lines.get(1), lines.get(1).endsWith(
+              ",\"status\":\"failed\",\"exitCode\":1,\"durationMillis\":20,\"attempt\":0"
+              + ",\"failure\":\"say \\\"no\\\"\\n\\tat \\\\here\"}"));
+    }
+
+
+    public void test_outputTail() throws Exception {
+        OutputTail tail = new OutputTail(10);
+        tail.write("abc\n".getBytes());
+        assertEquals("abc\n", tail.toString());
+
+        tail.write("defgh\nij".getBytes());
+        assertEquals("defgh\nij", tail.toString());
+
+        tail.write('k');
+        assertEquals("defgh\nijk", tail.toString());
+
+        tail.write("0123456789\nxyz".getBytes());
+        assertEquals("xyz", tail.toString());
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "resultWriter").getAbsoluteFile();
+        storyA = new File(directory, "StoryA.xml");
+        storyB = new File(directory, "batch/daily/StoryB.xml");
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        new File(directory, "reports/result.xml").delete();
+        new File(directory, "reports/result.ndjson").delete();
+        new File(directory, "reports").delete();
+        directory.delete();
+    }
+
+
+    private static Element parse(File reportFile) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(reportFile);
+        return document.getDocumentElement();
+    }
+
+
+    private static List<String> readLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            List<String> lines = new ArrayList<String>();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+            return lines;
+        }
+        finally {
+            reader.close();
+        }
+    }
+}
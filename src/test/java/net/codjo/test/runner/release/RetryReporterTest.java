@@ -0,0 +1,106 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link RetryReporter} et {@link StoryHistoryStore}.
+ */
+public class RetryReporterTest extends TestCase {
+    private File storeFile;
+    private File stable;
+    private File flaky;
+    private File broken;
+
+
+    public void test_toReport() throws Exception {
+        StoryHistoryStore historyStore = new StoryHistoryStore(storeFile);
+        historyStore.record(broken.getAbsolutePath(), true);
+        RetryReporter reporter = new RetryReporter(historyStore);
+
+        reporter.storyFinished(new StoryResult(stable, 0, 10, 0));
+        reporter.storyFinished(new StoryResult(flaky, 1, 10, 0));
+        reporter.storyFinished(new StoryResult(broken, 1, 10, 0));
+        reporter.storyFinished(new StoryResult(flaky, 0, 10, 1));
+        reporter.storyFinished(new StoryResult(broken, 1, 10, 1));
+
+        assertEquals("\nRetry summary: 3 stories, 1 passed at first attempt\n"
+                     + "Passed on retry (flaky):\n"
+                     + "  Flaky.xml (2 attempt(s), history FP)\n"
+                     + "Failed (regressions):\n"
+                     + "  Broken.xml (2 attempt(s), history PFF)\n",
+                     reporter.toReport());
+    }
+
+
+    public void test_toReport_classifiedFromThisRun() throws Exception {
+        StoryHistoryStore historyStore = new StoryHistoryStore(storeFile);
+        historyStore.record(flaky.getAbsolutePath(), true);
+        historyStore.record(flaky.getAbsolutePath(), false);
+        historyStore.record(flaky.getAbsolutePath(), true);
+        historyStore.record(broken.getAbsolutePath(), true);
+        historyStore.record(broken.getAbsolutePath(), false);
+        historyStore.record(broken.getAbsolutePath(), true);
+        RetryReporter reporter = new RetryReporter(historyStore);
+
+        reporter.storyFinished(new StoryResult(flaky, 1, 10, 0));
+        reporter.storyFinished(new StoryResult(broken, 1, 10, 0));
+        reporter.storyFinished(new StoryResult(stable, 1, 10, 0));
+        reporter.storyFinished(new StoryResult(flaky, 0, 10, 1));
+        reporter.storyFinished(new StoryResult(broken, 1, 10, 1));
+        reporter.storyFinished(new StoryResult(stable, 0, 10, 1));
+
+        assertEquals("\nRetry summary: 3 stories, 0 passed at first attempt\n"
+                     + "Passed on retry, known as flaky:\n"
+                     + "  Flaky.xml (2 attempt(s), history PFPFP)\n"
+                     + "Passed on retry (flaky):\n"
+                     + "  Stable.xml (2 attempt(s), history FP)\n"
+                     + "Failed (regressions):\n"
+                     + "  Broken.xml (2 attempt(s), history PFPFF)\n",
+                     reporter.toReport());
+    }
+
+
+    public void test_isFlaky() throws Exception {
+        StoryHistoryStore historyStore = new StoryHistoryStore(storeFile);
+        String story = flaky.getAbsolutePath();
+
+        historyStore.record(story, true);
+        historyStore.record(story, false);
+        assertFalse(historyStore.isFlaky(story));
+
+        historyStore.record(story, true);
+        assertTrue(historyStore.isFlaky(story));
+        historyStore.save();
+
+        assertEquals("PFP", new StoryHistoryStore(storeFile).getHistory(story));
+    }
+
+
+    public void test_history_isBounded() throws Exception {
+        StoryHistoryStore historyStore = new StoryHistoryStore(storeFile);
+        for (int i = 0; i < StoryHistoryStore.HISTORY_SIZE + 5; i++) {
+            historyStore.record("story", i % 2 == 0);
+        }
+        assertEquals(StoryHistoryStore.HISTORY_SIZE, historyStore.getHistory("story").length());
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        storeFile = new File(System.getProperty("java.io.tmpdir"), "retryReporter/history.properties");
+        stable = new File("Stable.xml");
+        flaky = new File("Flaky.xml");
+        broken = new File("Broken.xml");
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        storeFile.delete();
+        storeFile.getParentFile().delete();
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link StoryBatchProcess}.
+ */
+public class StoryBatchProcessTest extends TestCase {
+    private StringBuilder log;
+
+
+    public void test_runStories() throws Exception {
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml"), new File("B.xml")),
+                                                          new FakeProcessFactory(0));
+        process.addStoryListener(new LogListener());
+        process.start();
+
+        assertEquals("output of A.xml\noutput of B.xml\n", readAll(process.getInputStream()));
+        assertEquals(0, process.waitFor());
+        assertEquals("start(A.xml) finish(A.xml, 0) start(B.xml) finish(B.xml, 0) ", log.toString());
+    }
+
+
+    public void test_runStories_failure() throws Exception {
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml")),
+                                                          new FakeProcessFactory(3));
+        process.addStoryListener(new LogListener());
+        process.start();
+
+        assertEquals(1, process.waitFor());
+        assertEquals(1, process.exitValue());
+        assertEquals("start(A.xml) finish(A.xml, 3) ", log.toString());
+    }
+
+
+    public void test_runStories_failureExcerpt() throws Exception {
+        final List<StoryResult> results = new ArrayList<StoryResult>();
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml"), new File("B.xml")),
+                                                          new StoryProcessFactory() {
+                                                              public Process start(File story) {
+                                                                  return new FakeProcessFactory(
+                                                                        "A.xml".equals(story.getName()) ? 0 : 1)
+                                                                        .start(story);
+                                                              }
+                                                          });
+        process.addStoryListener(new StoryListener() {
+            public void storyStarted(File story) {
+            }
+
+
+            public void storyFinished(StoryResult result) {
+                results.add(result);
+            }
+        });
+        process.start();
+
+        assertEquals(1, process.waitFor());
+        assertNull(results.get(0).getFailureExcerpt());
+        assertEquals("output of B.xml\n", results.get(1).getFailureExcerpt());
+    }
+
+
+    public void test_runStories_cannotStart() throws Exception {
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml")),
+                                                          new StoryProcessFactory() {
+                                                              public Process start(File story) throws IOException {
+                                                                  throw new IOException("no java");
+                                                              }
+                                                          });
+        process.start();
+
+        assertEquals("Impossible de lancer A.xml : java.io.IOException: no java",
+                     readAll(process.getErrorStream()).trim());
+        assertEquals(1, process.waitFor());
+    }
+
+
+    public void test_runStories_retryFailedStoriesOnly() throws Exception {
+        final List<String> launches = new ArrayList<String>();
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml"), new File("B.xml")),
+                                                          new StoryProcessFactory() {
+                                                              public Process start(File story) {
+                                                                  launches.add(story.getName());
+                                                                  boolean firstLaunchOfA =
+                                                                        Collections.frequency(launches, "A.xml") == 1
+                                                                        && "A.xml".equals(story.getName());
+                                                                  return new FakeProcessFactory(firstLaunchOfA ? 1 : 0)
+                                                                        .start(story);
+                                                              }
+                                                          });
+        process.setMaxRetries(2);
+        process.addStoryListener(new LogListener());
+        process.start();
+
+        assertEquals(0, process.waitFor());
+        assertEquals(Arrays.asList("A.xml", "B.xml", "A.xml"), launches);
+        assertEquals("start(A.xml) finish(A.xml, 1) start(B.xml) finish(B.xml, 0) start(A.xml) finish(A.xml, 0) ",
+                     log.toString());
+    }
+
+
+    public void test_runStories_retryExhausted() throws Exception {
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml")),
+                                                          new FakeProcessFactory(1));
+        process.setMaxRetries(2);
+        process.addStoryListener(new LogListener());
+        process.start();
+
+        assertEquals(1, process.waitFor());
+        assertEquals("start(A.xml) finish(A.xml, 1) start(A.xml) finish(A.xml, 1) start(A.xml) finish(A.xml, 1) ",
+                     log.toString());
+    }
+
+
+    public void test_runStories_parallel() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        StoryBatchProcess process = new StoryBatchProcess(
+              Arrays.asList(new File("A.xml"), new File("B.xml"), new File("C.xml"), new File("D.xml")),
+              new StoryProcessFactory() {
+                  public Process start(File story) {
+                      int current = running.incrementAndGet();
+                      synchronized (maxRunning) {
+                          maxRunning.set(Math.max(maxRunning.get(), current));
+                      }
+                      try {
+                          Thread.sleep(100);
+                      }
+                      catch (InterruptedException e) {
+                          fail();
+                      }
+                      running.decrementAndGet();
+                      return new FakeProcessFactory("B.xml".equals(story.getName()) ? 1 : 0).start(story);
+                  }
+              });
+        process.setParallelism(3);
+        process.setScheduler(new StoryScheduler(2));
+        process.start();
+
+        String output = readAll(process.getInputStream());
+        assertEquals(1, process.waitFor());
+        assertEquals(2, maxRunning.get());
+        for (String story : Arrays.asList("A.xml", "B.xml", "C.xml", "D.xml")) {
+            assertTrue(output, output.contains("output of " + story + "\n"));
+        }
+    }
+
+
+    public void test_runStories_listenerCrash() throws Exception {
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml")),
+                                                          new FakeProcessFactory(0));
+        process.addStoryListener(new LogListener() {
+            @Override
+            public void storyFinished(StoryResult result) {
+                throw new IllegalStateException("listener crash");
+            }
+        });
+        process.start();
+
+        assertTrue(readAll(process.getErrorStream()).contains("listener crash"));
+        assertEquals(1, process.waitFor());
+    }
+
+
+    public void test_runStories_startedOnceScheduled() throws Exception {
+        StoryScheduler scheduler = new StoryScheduler(1);
+        scheduler.acquire();
+        StoryBatchProcess process = new StoryBatchProcess(Arrays.asList(new File("A.xml")),
+                                                          new FakeProcessFactory(0));
+        process.setScheduler(scheduler);
+        process.addStoryListener(new LogListener());
+        process.start();
+
+        Thread.sleep(200);
+        assertEquals("", log.toString());
+        scheduler.release();
+
+        assertEquals(0, process.waitFor());
+        assertEquals("start(A.xml) finish(A.xml, 0) ", log.toString());
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        log = new StringBuilder();
+    }
+
+
+    private static String readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+            content.write(buffer, 0, read);
+        }
+        return content.toString();
+    }
+
+
+    private class LogListener implements StoryListener {
+        public void storyStarted(File story) {
+            log.append("start(").append(story.getName()).append(") ");
+        }
+
+
+        public void storyFinished(StoryResult result) {
+            log.append("finish(").append(result.getStory().getName()).append(", ")
+                  .append(result.getExitCode()).append(") ");
+        }
+    }
+
+    private static class FakeProcessFactory implements StoryProcessFactory {
+        private final int exitCode;
+
+
+        FakeProcessFactory(int exitCode) {
+            this.exitCode = exitCode;
+        }
+
+
+        public Process start(final File story) {
+            return new Process() {
+                @Override
+                public OutputStream getOutputStream() {
+                    return new ByteArrayOutputStream();
+                }
+
+
+                @Override
+                public InputStream getInputStream() {
+                    return new ByteArrayInputStream(("output of " + story.getName() + "\n").getBytes());
+                }
+
+
+                @Override
+                public InputStream getErrorStream() {
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+
+
+                @Override
+                public int waitFor() {
+                    return exitCode;
+                }
+
+
+                @Override
+                public int exitValue() {
+                    return exitCode;
+                }
+
+
+                @Override
+                public void destroy() {
+                }
+            };
+        }
+    }
+}
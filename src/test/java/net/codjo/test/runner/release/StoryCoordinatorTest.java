@@ -0,0 +1,367 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link StoryCoordinator} et {@link StoryWorker}, avec plusieurs agents sur le poste.
+ */
+public class StoryCoordinatorTest extends TestCase {
+    private StoryCoordinator coordinator;
+    private List<StoryWorker> workers;
+    private Map<String, String> launches;
+
+
+    public void test_runStories_severalWorkers() throws Exception {
+        startWorker("w1", null);
+        startWorker("w2", null);
+        startWorker("w3", null);
+        waitForWorkers(3);
+
+        List<File> stories = new ArrayList<File>();
+        for (int i = 0; i < 9; i++) {
+            stories.add(new File("Story" + i + ".xml"));
+        }
+        stories.add(new File("Failing.xml"));
+        final List<StoryResult> results = Collections.synchronizedList(new ArrayList<StoryResult>());
+        StoryBatchProcess process = new StoryBatchProcess(stories, coordinator);
+        process.setParallelism(stories.size());
+        process.setScheduler(new StoryScheduler(stories.size()));
+        process.addStoryListener(new StoryListener() {
+            public void storyStarted(File story) {
+            }
+
+
+            public void storyFinished(StoryResult result) {
+                results.add(result);
+            }
+        });
+        process.start();
+
+        String output = readAll(process.getInputStream());
+        assertEquals(1, process.waitFor());
+        assertEquals(stories.size(), results.size());
+        assertEquals(stories.size(), launches.size());
+        assertEquals(new HashSet<String>(Arrays.asList("w1", "w2", "w3")), new HashSet<String>(launches.values()));
+        for (StoryResult result : results) {
+            assertEquals(result.getStory().getName(), "Failing.xml".equals(result.getStory().getName()),
+                         !result.isSuccess());
+        }
+        assertTrue(output, output.contains("output of Story3.xml"));
+    }
+
+
+    public void test_workStealing() throws Exception {
+        CountDownLatch slowStoryRelease = new CountDownLatch(1);
+        startWorker("slow", slowStoryRelease);
+        waitForWorkers(1);
+
+        List<Process> processes = new ArrayList<Process>();
+        for (int i = 0; i < 4; i++) {
+            processes.add(coordinator.start(new File("Story" + i + ".xml")));
+        }
+        waitForLaunch("Story0.xml");
+
+        startWorker("fast", null);
+        for (Process process : processes.subList(1, 4)) {
+            assertEquals(0, process.waitFor());
+        }
+        slowStoryRelease.countDown();
+        assertEquals(0, processes.get(0).waitFor());
+
+        assertEquals("slow", launches.get("Story0.xml"));
+        assertEquals("fast", launches.get("Story1.xml"));
+        assertEquals("fast", launches.get("Story2.xml"));
+        assertEquals("fast", launches.get("Story3.xml"));
+    }
+
+
+    public void test_workerLost() throws Exception {
+        StoryWorker dyingWorker = startWorker("dying", new CountDownLatch(1));
+        waitForWorkers(1);
+
+        Process process = coordinator.start(new File("Story.xml"));
+        waitForLaunch("Story.xml");
+        startWorker("healthy", null);
+        dyingWorker.stop();
+
+        assertEquals(0, process.waitFor());
+        assertEquals("healthy", launches.get("Story.xml"));
+        String output = readAll(process.getInputStream());
+        assertTrue(output, output.startsWith("[dying]\noutput of Story.xml on dying\n"
+                                             + "Worker dying lost, Story.xml runs again on another worker\n"
+                                             + "[healthy]\noutput of Story.xml on healthy\n[healthy, "));
+    }
+
+
+    public void test_outputStreamed() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final byte[] largeOutput = new byte[3 * StoryBatchProcess.EXCERPT_SIZE];
+        Arrays.fill(largeOutput, (byte)'x');
+        StoryWorker worker = new StoryWorker("localhost", coordinator.getPort(), coordinator.getToken(), "w1",
+                                             new StoryProcessFactory() {
+                                                 public Process start(File story) {
+                                                     return new FakeProcess(story, "w1", release) {
+                                                         @Override
+                                                         public InputStream getInputStream() {
+                                                             return new ByteArrayInputStream(largeOutput);
+                                                         }
+                                                     };
+                                                 }
+                                             });
+        workers.add(worker);
+        startWorker(worker);
+        waitForWorkers(1);
+
+        Process process = coordinator.start(new File("Story.xml"));
+        InputStream input = process.getInputStream();
+        byte[] expected = ("[w1]\n" + new String(largeOutput)).getBytes();
+        byte[] streamed = new byte[expected.length];
+        new DataInputStream(input).readFully(streamed);
+        assertEquals(new String(expected), new String(streamed));
+
+        release.countDown();
+        assertEquals(0, process.waitFor());
+        assertTrue(readAll(input).startsWith("[w1, "));
+    }
+
+
+    public void test_workerVanished() throws Exception {
+        coordinator.close();
+        coordinator = new StoryCoordinator(InetAddress.getByName(null), 0, Arrays.asList("java", "Runner"), ".");
+        coordinator.setHeartbeatInterval(100);
+        coordinator.open();
+        Socket vanishing = new Socket("localhost", coordinator.getPort());
+        try {
+            DataOutputStream output = new DataOutputStream(vanishing.getOutputStream());
+            output.writeUTF(StoryCoordinator.HELLO);
+            output.writeUTF("vanishing");
+            output.writeUTF(coordinator.getToken());
+            output.writeUTF(StoryCoordinator.NEXT);
+            output.flush();
+            waitForWorkers(1);
+
+            Process process = coordinator.start(new File("Story.xml"));
+            DataInputStream input = new DataInputStream(vanishing.getInputStream());
+            assertEquals(StoryCoordinator.COMMAND, input.readUTF());
+            for (int count = input.readInt() + 2; count > 0; count--) {
+                input.readUTF();
+            }
+            while (!StoryCoordinator.RUN.equals(input.readUTF())) {
+                // Battements, sans reponse.
+            }
+            startWorker("healthy", null);
+
+            assertEquals(0, process.waitFor());
+            assertEquals("healthy", launches.get("Story.xml"));
+            assertEquals(1, coordinator.getWorkerCount());
+        }
+        finally {
+            vanishing.close();
+        }
+    }
+
+
+    public void test_hello_invalidToken() throws Exception {
+        startWorker("intruder", null, "guess");
+        Thread.sleep(200);
+
+        assertEquals(0, coordinator.getWorkerCount());
+        assertTrue(coordinator.getBindAddress().isLoopbackAddress());
+    }
+
+
+    public void test_workerCountListener() throws Exception {
+        final List<Integer> counts = Collections.synchronizedList(new ArrayList<Integer>());
+        coordinator.setWorkerCountListener(new StoryCoordinator.WorkerCountListener() {
+            public void workerCountChanged(int workerCount) {
+                counts.add(workerCount);
+            }
+        });
+        StoryWorker dyingWorker = startWorker("dying", new CountDownLatch(1));
+        waitForWorkers(1);
+        Process process = coordinator.start(new File("Story.xml"));
+        waitForLaunch("Story.xml");
+        startWorker("healthy", null);
+        waitForWorkers(2);
+        dyingWorker.stop();
+
+        assertEquals(0, process.waitFor());
+        assertEquals(Arrays.asList(1, 2, 1), counts);
+    }
+
+
+    public void test_close_failsPendingStories() throws Exception {
+        Process process = coordinator.start(new File("Story.xml"));
+        coordinator.close();
+
+        assertEquals(-1, process.waitFor());
+        try {
+            coordinator.start(new File("Other.xml"));
+            fail();
+        }
+        catch (IOException e) {
+            assertEquals("Le coordinateur est arrete", e.getMessage());
+        }
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        coordinator = new StoryCoordinator(InetAddress.getByName(null), 0, Arrays.asList("java", "Runner"), ".");
+        coordinator.open();
+        workers = new ArrayList<StoryWorker>();
+        launches = Collections.synchronizedMap(new HashMap<String, String>());
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        coordinator.close();
+        for (StoryWorker worker : workers) {
+            worker.stop();
+        }
+    }
+
+
+    private StoryWorker startWorker(String name, CountDownLatch release) {
+        return startWorker(name, release, coordinator.getToken());
+    }
+
+
+    private StoryWorker startWorker(final String name, final CountDownLatch release, String token) {
+        StoryProcessFactory processFactory = new StoryProcessFactory() {
+            public Process start(File story) {
+                launches.put(story.getName(), name);
+                return new FakeProcess(story, name, release);
+            }
+        };
+        StoryWorker worker = new StoryWorker("localhost", coordinator.getPort(), token, name, processFactory);
+        workers.add(worker);
+        startWorker(worker);
+        return worker;
+    }
+
+
+    private static void startWorker(final StoryWorker worker) {
+        new Thread(new Runnable() {
+            public void run() {
+                try {
+                    worker.run();
+                }
+                catch (IOException e) {
+                    fail(e.toString());
+                }
+            }
+        }).start();
+    }
+
+
+    private void waitForWorkers(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && coordinator.getWorkerCount() < count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, coordinator.getWorkerCount());
+    }
+
+
+    private void waitForLaunch(String story) throws InterruptedException {
+        for (int i = 0; i < 100 && !launches.containsKey(story); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(launches.containsKey(story));
+    }
+
+
+    private static String readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int read = inputStream.read(buffer); read != -1; read = inputStream.read(buffer)) {
+            content.write(buffer, 0, read);
+        }
+        return content.toString();
+    }
+
+
+    /**
+     * Runner qui ecrit une ligne, echoue pour 'Failing.xml' et, si un verrou est fourni, attend sa liberation ou
+     * son arret.
+     */
+    private static class FakeProcess extends Process {
+        private final File story;
+        private final String workerName;
+        private final CountDownLatch release;
+
+
+        FakeProcess(File story, String workerName, CountDownLatch release) {
+            this.story = story;
+            this.workerName = workerName;
+            this.release = release;
+        }
+
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new ByteArrayOutputStream();
+        }
+
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(("output of " + story.getName() + " on " + workerName + "\n").getBytes());
+        }
+
+
+        @Override
+        public InputStream getErrorStream() {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            if (release != null) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+            else {
+                Thread.sleep(50);
+            }
+            return exitValue();
+        }
+
+
+        @Override
+        public int exitValue() {
+            return ("Failing.xml".equals(story.getName()) ? 1 : 0);
+        }
+
+
+        @Override
+        public void destroy() {
+            if (release != null) {
+                release.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link StoryIndex}.
+ */
+public class StoryIndexTest extends TestCase {
+    private File directory;
+    private File indexFile;
+    private File storyA;
+    private File storyB;
+    private File dataset;
+
+
+    public void test_findStories() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+
+        assertEquals(Arrays.asList(storyA, storyB), index.findStories(directory));
+        assertEquals(Arrays.asList(storyB), index.findStories(storyB.getParentFile()));
+        assertEquals(Arrays.asList(storyA), index.findStories(storyA));
+        assertEquals(Collections.<File>emptyList(), index.findStories(dataset));
+        assertEquals(3, index.size());
+    }
+
+
+    public void test_findStories_throughStoryFinder() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        StoryFinder finder = new StoryFinder(index);
+
+        assertTrue(finder.containsStories(directory));
+        assertTrue(finder.containsStories(storyB));
+        assertFalse(finder.containsStories(dataset));
+        new File(directory, "nested/inner").mkdirs();
+        write("nested/inner/StoryN.xml", "<release-test name='N'/>");
+        assertFalse(finder.containsStories(new File(directory, "nested")));
+        assertEquals(0, index.size());
+
+        assertEquals(new StoryFinder().findStories(directory), finder.findStories(directory));
+    }
+
+
+    public void test_storyName() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+
+        assertEquals("A", index.getStoryName(storyA));
+        assertEquals("B", index.getStoryName(storyB));
+        assertNull(index.getStoryName(dataset));
+    }
+
+
+    public void test_save_reload() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        index.findStories(directory);
+        index.save();
+
+        StoryIndex reloaded = new StoryIndex(indexFile, new UnusedRecognizer());
+        assertEquals(2, reloaded.size());
+        assertEquals(Arrays.asList(storyA, storyB), reloaded.findStories(directory));
+        assertEquals("B", reloaded.getStoryName(storyB));
+    }
+
+
+    public void test_update_newStory() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        index.findStories(directory);
+
+        File storyC = write("StoryC.xml", "<release-test name='C'/>");
+        index.update(storyC);
+        index.save();
+
+        assertEquals(Arrays.asList(storyA, storyC, storyB),
+                     new StoryIndex(indexFile, new UnusedRecognizer()).findStories(directory));
+    }
+
+
+    public void test_update_outsideIndexedDirectories() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        index.findStories(storyB.getParentFile());
+
+        index.update(storyA);
+
+        assertEquals(1, index.size());
+    }
+
+
+    public void test_remove() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        index.findStories(directory);
+
+        storyA.delete();
+        index.remove(storyA);
+        assertEquals(Arrays.asList(storyB), index.findStories(directory));
+
+        index.remove(storyB.getParentFile());
+        assertEquals(0, index.size());
+    }
+
+
+    public void test_staleEntry_revalidated() throws Exception {
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        index.findStories(directory);
+        index.save();
+
+        write("StoryA.xml", "<Scenarii/>");
+        storyA.setLastModified(storyA.lastModified() + 2000);
+
+        assertEquals(Arrays.asList(storyB),
+                     new StoryIndex(indexFile, new FileFormatRecognizer()).findStories(directory));
+    }
+
+
+    public void test_findStories_changedWithoutEvent() throws Exception {
+        File other = write("X.xml", "<Scenarii/>");
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+        assertEquals(Arrays.asList(storyA, storyB), index.findStories(directory));
+        index.save();
+
+        write("X.xml", "<release-test name='X'/>");
+        other.setLastModified(other.lastModified() + 2000);
+        File created = write("sub/N.xml", "<release-test name='N'/>");
+        storyB.getParentFile().setLastModified(storyB.getParentFile().lastModified() + 2000);
+
+        assertEquals(Arrays.asList(storyA, other, created, storyB), index.findStories(directory));
+        assertEquals(Arrays.asList(storyA, other, created, storyB),
+                     new StoryIndex(indexFile, new FileFormatRecognizer()).findStories(directory));
+    }
+
+
+    public void test_findStories_onlyXmlFiles() throws Exception {
+        File notes = write("notes.txt", "<release-test name='notes'/>");
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+
+        assertEquals(Arrays.asList(storyA, storyB), index.findStories(directory));
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(notes), index.findStories(notes));
+    }
+
+
+    public void test_load_corruptedFile() throws Exception {
+        FileOutputStream output = new FileOutputStream(indexFile);
+        try {
+            output.write(new byte[]{0x52, 0x54, 0x49, 0x58, 0, 0, 0});
+        }
+        finally {
+            output.close();
+        }
+
+        StoryIndex index = new StoryIndex(indexFile, new FileFormatRecognizer());
+
+        assertEquals(0, index.size());
+        assertEquals(Arrays.asList(storyA, storyB), index.findStories(directory));
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "storyIndex");
+        new File(directory, "sub").mkdirs();
+        indexFile = new File(System.getProperty("java.io.tmpdir"), "storyIndex.idx");
+        indexFile.delete();
+        storyA = write("StoryA.xml", "<release-test name='A'><tokio-load id='load' file='StoryA.tokio'/>");
+        storyB = write("sub/StoryB.xml", "<release-test name=\"B\"><client user='pims'/>");
+        dataset = write("StoryA.tokio", "<Scenarii/>");
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(directory);
+        indexFile.delete();
+    }
+
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(directory, name);
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+
+    /**
+     * Reconnaissance qui echoue : verifie que l'index recharge ne relit pas les fichiers inchanges.
+     */
+    private static class UnusedRecognizer extends FileFormatRecognizer {
+        @Override
+        boolean isReleaseTestFileFormat(Reader reader) {
+            throw new AssertionError("Fichier relu alors qu'il est indexe");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * codjo.net
+ *
+ * Common Apache License 2.0
+ */
+package net.codjo.test.runner.release;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+/**
+ * Classe de test de {@link StoryPatternResolver}.
+ */
+public class StoryPatternResolverTest extends TestCase {
+    private StoryPatternResolver resolver;
+    private File moduleDirectory;
+    private File storyA;
+    private File storyB;
+    private File storyC;
+    private File dataset;
+
+
+    public void test_resolve_storyAndDirectory() throws Exception {
+        assertEquals(Arrays.asList(storyA, storyB, storyC),
+                     resolver.resolve(moduleDirectory, Arrays.asList("src/stories/StoryC.xml", "src/batch")));
+    }
+
+
+    public void test_resolve_glob() throws Exception {
+        assertEquals(Arrays.asList(storyA),
+                     resolver.resolve(moduleDirectory, Arrays.asList("src/batch/*A.xml")));
+        assertEquals(Arrays.asList(storyA, storyB, storyC),
+                     resolver.resolve(moduleDirectory, Arrays.asList("src/**/Story?.xml")));
+        assertEquals(Arrays.asList(storyB),
+                     resolver.resolve(moduleDirectory, Arrays.asList(moduleDirectory.getPath() + "/**/daily/*")));
+    }
+
+
+    public void test_resolve_noDuplicateAndBlankLines() throws Exception {
+        assertEquals(Arrays.asList(storyA, storyB),
+                     resolver.resolve(moduleDirectory, Arrays.asList("src/batch", "", " src/batch/StoryA.xml ")));
+        assertEquals(Collections.<File>emptyList(),
+                     resolver.resolve(moduleDirectory, Arrays.asList("src/unknown/*.xml")));
+    }
+
+
+    public void test_toRegexp() throws Exception {
+        assertTrue(StoryPatternResolver.toRegexp("a/**/b.xml").matcher("a/b.xml").matches());
+        assertTrue(StoryPatternResolver.toRegexp("a/**/b.xml").matcher("a/x/y/b.xml").matches());
+        assertFalse(StoryPatternResolver.toRegexp("a/*.xml").matcher("a/x/b.xml").matches());
+        assertFalse(StoryPatternResolver.toRegexp("a.xml").matcher("aXxml").matches());
+    }
+
+
+    @Override
+    protected void setUp() throws Exception {
+        resolver = new StoryPatternResolver(new StoryFinder());
+        moduleDirectory = new File(System.getProperty("java.io.tmpdir"), "storyPatternResolver").getAbsoluteFile();
+        storyA = write("src/batch/StoryA.xml", "<release-test name='A'/>");
+        storyB = write("src/batch/daily/StoryB.xml", "<release-test name='B'/>");
+        storyC = write("src/stories/StoryC.xml", "<release-test name='C'/>");
+        dataset = write("src/batch/StoryA.tokio", "<Scenarii/>");
+    }
+
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : Arrays.asList(storyA, storyB, storyC, dataset)) {
+            file.delete();
+        }
+        new File(moduleDirectory, "src/batch/daily").delete();
+        new File(moduleDirectory, "src/batch").delete();
+        new File(moduleDirectory, "src/stories").delete();
+        new File(moduleDirectory, "src").delete();
+        moduleDirectory.delete();
+    }
+
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(moduleDirectory, name);
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+}